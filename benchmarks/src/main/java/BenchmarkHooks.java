@@ -0,0 +1,78 @@
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.UnaryOperator;
+
+import benchmarks.AlignmentHooks;
+
+/**
+ *
+ * Default package implementation of the benchmarks' AlignmentHooks, it can use the package-private methods of the alignment classes.
+ * The file name of the alignment objects is not used as the benchmarks never read from disk.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class BenchmarkHooks implements AlignmentHooks {
+
+    /**
+     * Creates the alignment object for a mode.
+     */
+    static Align create(String mode, int limit) {
+        switch(mode) {
+            case "L":
+                return new LeftAlign("", limit);
+            case "R":
+                return new RightAlign("", limit);
+            case "C":
+                return new CenterAlign("", limit);
+            case "H":
+            case "HR":
+            case "HC":
+                HyphenateAlign hyphenate = new HyphenateAlign("", limit);
+                hyphenate.setAlignment(mode.length() == 1 ? "L" : mode.substring(1));
+                return hyphenate;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    @Override
+    public Function<String[], List<String>> splitString(String mode, int limit) {
+        Align align = create(mode, limit);
+        return align::splitString;
+    }
+
+    @Override
+    public Consumer<String[]> breakLines(String mode, int limit, IntConsumer line_ends) {
+        LineBreaker breaker = create(mode, limit).getLineBreaker();
+        LineSink sink = (text, start, end, hyphen) -> line_ends.accept(end);
+        return paragraphs -> {
+            for (String paragraph : paragraphs) {
+                breaker.breakLines(paragraph, limit, sink);
+            }
+        };
+    }
+
+    @Override
+    public UnaryOperator<String> padSpaces(String mode, int limit) {
+        Align align = create(mode, limit);
+        return align::padSpaces;
+    }
+
+    @Override
+    public Consumer<List<String>> writeLines(String mode, int limit) {
+        Align align = create(mode, limit);
+        OutputSink sink = new OutputSink(Channels.newChannel(OutputStream.nullOutputStream()), StandardCharsets.UTF_8);
+        return lines -> {
+            for (String line : lines) {
+                align.writeLine(sink, line, 0, line.length(), false);
+            }
+            sink.flush();
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ *
+ * Gives the benchmarks access to the alignment classes. JMH does not allow benchmarks in the default package, and classes in a
+ * named package cannot refer to the tool's default package classes, so the tool is reached through this interface instead.
+ * It is implemented by BenchmarkHooks in the default package, which is loaded by name.
+ * Modes are the align_mode values of AlignText: L, R, C, H (left hyphenated), HR and HC.
+ *
+ * @author Malak Sadek
+ *
+ */
+public interface AlignmentHooks {
+
+    /**
+     * Loads the implementation from the default package.
+     */
+    static AlignmentHooks load() {
+        try {
+            return (AlignmentHooks) Class.forName("BenchmarkHooks").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkHooks is missing from the benchmark jar", e);
+        }
+    }
+
+    /**
+     * Returns a function that calls splitString on an alignment object of the given mode and line length.
+     */
+    Function<String[], List<String>> splitString(String mode, int limit);
+
+    /**
+     * Returns a function that runs the line breaker of the given mode over every paragraph and reports the end offset of each line.
+     */
+    Consumer<String[]> breakLines(String mode, int limit, IntConsumer line_ends);
+
+    /**
+     * Returns a function that calls padSpaces on an alignment object of the given mode and line length.
+     */
+    UnaryOperator<String> padSpaces(String mode, int limit);
+
+    /**
+     * Returns a function that writes lines through writeLine of the given mode into an output sink that discards its output.
+     */
+    Consumer<List<String>> writeLines(String mode, int limit);
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ *
+ * Generates the input text for the benchmarks. The text is built from a seeded Random, so every run measures exactly the same input.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class BenchmarkCorpus {
+
+    /**
+     * Approximate number of characters generated for each shape.
+     */
+    public static final int SIZE = 1 << 18;
+
+    /**
+     * The kinds of input text that are benchmarked.
+     */
+    public enum Shape {
+        /** Many paragraphs of 5 to 30 ordinary words. */
+        SHORT_PARAGRAPHS,
+        /** One single paragraph containing all of the text. */
+        HUGE_PARAGRAPH,
+        /** Paragraphs made of words between 30 and 300 characters long, longer than most line lengths. */
+        LONG_WORDS,
+        /** Paragraphs where most characters are runs of spaces between short words. */
+        MOSTLY_WHITESPACE
+    }
+
+    /**
+     * Generates the paragraphs for a shape.
+     * @return Returns an array of paragraphs, the same as FileUtil.readFile would return for the text.
+     */
+    static String[] paragraphs(Shape shape) {
+        Random random = new Random(42);
+        ArrayList<String> paragraphs = new ArrayList<>();
+        StringBuilder paragraph = new StringBuilder();
+        int total = 0;
+        int words = 0, target = 0;
+
+        while (total < SIZE) {
+            if (paragraph.length() > 0) {
+                paragraph.append(shape == Shape.MOSTLY_WHITESPACE ? " ".repeat(1 + random.nextInt(12)) : " ");
+            }
+            int length = shape == Shape.LONG_WORDS ? 30 + random.nextInt(271) : wordLength(random);
+            for (int i = 0; i < length; i++) {
+                paragraph.append((char) ('a' + random.nextInt(26)));
+            }
+            words++;
+
+            //Ends the paragraph once it has enough words, apart from the huge paragraph which never ends
+            if (target == 0) {
+                target = 5 + random.nextInt(26);
+            }
+            if (shape != Shape.HUGE_PARAGRAPH && words >= target) {
+                total += paragraph.length() + 1;
+                paragraphs.add(paragraph.toString());
+                paragraph.setLength(0);
+                words = 0;
+                target = 0;
+            } else if (shape == Shape.HUGE_PARAGRAPH) {
+                total = paragraph.length();
+            }
+        }
+        if (paragraph.length() > 0) {
+            paragraphs.add(paragraph.toString());
+        }
+        return paragraphs.toArray(new String[0]);
+    }
+
+    /**
+     * Picks a word length from 1 to 12 letters, with short words more common than long ones like in English text.
+     */
+    static int wordLength(Random random) {
+        return 1 + (int) Math.min(11, Math.abs(random.nextGaussian() * 4));
+    }
+}
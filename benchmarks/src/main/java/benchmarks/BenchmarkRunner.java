@@ -0,0 +1,31 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * Main class of the benchmark jar. It accepts the normal JMH command line options,
+ * and always adds the GC profiler so that the allocation rate is reported next to the throughput.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Runs the benchmarks selected on the command line (all of them by default).
+     * @param args - JMH command line options, e.g. 'WrapBenchmark -p limit=80'
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions command_line = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(command_line)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ *
+ * Writes synthetic text files for the end-to-end benchmarks. The text comes from a seeded Random, so the same size and seed
+ * always produce exactly the same file. Word lengths follow the same distribution as BenchmarkCorpus, and the number of words
+ * per paragraph is skewed so that most paragraphs are short but a few are very long.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class CorpusGenerator {
+
+    /**
+     * Generates the corpus at path unless a file of the right size is already there.
+     * @param path where the corpus is written
+     * @param size number of bytes to generate
+     * @param seed seed for the Random that picks word and paragraph lengths
+     * @return Returns path.
+     */
+    static Path generate(Path path, long size, long seed) throws IOException {
+        if (Files.exists(path) && Files.size(path) == size) {
+            return path;
+        }
+        Random random = new Random(seed);
+        byte[] word = new byte[16];
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            long written = 0;
+            int words = 0, target = paragraphLength(random);
+            while (written < size) {
+                int length = BenchmarkCorpus.wordLength(random);
+                for (int i = 0; i < length; i++) {
+                    word[i] = (byte) ('a' + random.nextInt(26));
+                }
+                //The file is cut off exactly at size, and always ends with a new line
+                length = (int) Math.min(length, size - written - 1);
+                out.write(word, 0, length);
+                written += length;
+                words++;
+
+                if (written >= size - 1) {
+                    break;
+                }
+                if (words >= target) {
+                    out.write('\n');
+                    words = 0;
+                    target = paragraphLength(random);
+                } else {
+                    out.write(' ');
+                }
+                written++;
+            }
+            out.write('\n');
+        }
+        return path;
+    }
+
+    /**
+     * Picks the number of words in a paragraph, from a log-normal distribution with a median of about 60 words.
+     */
+    private static int paragraphLength(Random random) {
+        return 1 + (int) Math.min(20000, Math.exp(4.1 + random.nextGaussian()));
+    }
+
+    /**
+     * Parses a size such as 512K, 10M or 2G into a number of bytes.
+     */
+    static long parseSize(String size) {
+        char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+        long multiplier = unit == 'K' ? 1L << 10 : unit == 'M' ? 1L << 20 : unit == 'G' ? 1L << 30 : 1;
+        String digits = multiplier == 1 ? size : size.substring(0, size.length() - 1);
+        return Long.parseLong(digits) * multiplier;
+    }
+}
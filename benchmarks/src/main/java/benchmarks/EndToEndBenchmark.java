@@ -0,0 +1,150 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * End-to-end throughput and scaling benchmark. It generates synthetic corpora of increasing size (see CorpusGenerator) and runs
+ * the full AlignText flow over each of them in a fresh JVM for every align mode, recording MB/s, time to first line, peak RSS
+ * and garbage collection totals. Every run is appended to a JSON lines results file so runs can be compared over time, and a
+ * summary is printed showing the throughput of each size relative to the smallest one, which shows where scaling stops being linear.
+ *
+ * Usage: java -cp target/benchmarks.jar benchmarks.EndToEndBenchmark [--sizes 1M,10M,100M,1G,10G] [--modes L,R,C,H,RH,CH]
+ *        [--limit 80] [--options "--mmap"] [--jvm-args "-Xmx512m"] [--seed 42] [--dir target/corpora] [--results target/end-to-end.jsonl]
+ *
+ * @author Malak Sadek
+ *
+ */
+public class EndToEndBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args - the options listed in the class comment, all of them have defaults
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        options.put("--sizes", "1M,10M,100M");
+        options.put("--modes", "L,R,C,H,RH,CH");
+        options.put("--limit", "80");
+        options.put("--options", "--mmap");
+        options.put("--jvm-args", "");
+        options.put("--seed", "42");
+        options.put("--dir", "target/corpora");
+        options.put("--results", "target/end-to-end.jsonl");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!options.containsKey(args[i])) {
+                System.err.println("Unknown option: " + args[i]);
+                System.exit(1);
+            }
+            options.put(args[i], args[i + 1]);
+        }
+
+        Path dir = Files.createDirectories(Paths.get(options.get("--dir")));
+        Path results = Paths.get(options.get("--results"));
+        long seed = Long.parseLong(options.get("--seed"));
+        String limit = options.get("--limit");
+
+        System.out.printf("%-6s %-4s %10s %10s %12s %12s %8s %10s%n",
+                "size", "mode", "MB/s", "scaling", "first line", "peak RSS", "GCs", "GC time");
+        Map<String, Double> smallest = new HashMap<>();
+        for (String size : options.get("--sizes").split(",")) {
+            long bytes = CorpusGenerator.parseSize(size);
+            Path corpus = CorpusGenerator.generate(dir.resolve("corpus-" + size + "-" + seed + ".txt"), bytes, seed);
+
+            for (String mode : options.get("--modes").split(",")) {
+                Run run = run(corpus, limit, mode, options.get("--options"), options.get("--jvm-args"));
+                double mb_per_s = bytes / (1024.0 * 1024.0) / run.seconds;
+                //Scaling is the throughput relative to the smallest size, 1.0 means it is still scaling linearly
+                smallest.putIfAbsent(mode, mb_per_s);
+                double scaling = mb_per_s / smallest.get(mode);
+
+                System.out.printf("%-6s %-4s %10.1f %10.2f %10.1fms %10dKB %8d %8dms%n",
+                        size, mode, mb_per_s, scaling, run.first_line_ms, run.stats.getOrDefault("peak_rss_kb", -1L),
+                        run.stats.getOrDefault("gc_count", -1L), run.stats.getOrDefault("gc_time_ms", -1L));
+                try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(results,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                    out.printf("{\"timestamp\":\"%s\",\"size\":\"%s\",\"input_bytes\":%d,\"seed\":%d,\"mode\":\"%s\",\"limit\":%s,"
+                            + "\"options\":\"%s\",\"exit_code\":%d,\"seconds\":%.4f,\"mb_per_s\":%.2f,\"scaling\":%.3f,"
+                            + "\"time_to_first_line_ms\":%.2f,\"output_bytes\":%d,\"peak_rss_kb\":%d,\"gc_count\":%d,\"gc_time_ms\":%d}%n",
+                            Instant.now(), size, bytes, seed, mode, limit, options.get("--options").replace("\"", "\\\""),
+                            run.exit_code, run.seconds, mb_per_s, scaling, run.first_line_ms, run.output_bytes,
+                            run.stats.getOrDefault("peak_rss_kb", -1L), run.stats.getOrDefault("gc_count", -1L),
+                            run.stats.getOrDefault("gc_time_ms", -1L));
+                }
+            }
+        }
+        System.out.println("Results appended to " + results);
+    }
+
+    /**
+     * Measurements of a single AlignText run.
+     */
+    private static class Run {
+        private int exit_code;
+        private double seconds;
+        private double first_line_ms;
+        private long output_bytes;
+        private Map<String, Long> stats = new HashMap<>();
+    }
+
+    /**
+     * Runs AlignText over the corpus in a new JVM through EndToEndProbe, reading and discarding its output.
+     */
+    private static Run run(Path corpus, String limit, String mode, String align_options, String jvm_args)
+            throws IOException, InterruptedException {
+        Path stats = Files.createTempFile("end-to-end", ".stats");
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(split(jvm_args));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(EndToEndProbe.class.getName());
+        command.add(stats.toString());
+        command.addAll(split(align_options));
+        command.add(corpus.toString());
+        command.add(limit);
+        command.add(mode);
+
+        Run run = new Run();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream output = process.getInputStream()) {
+            int read;
+            while ((read = output.read(buffer)) != -1) {
+                if (run.output_bytes == 0 && read > 0) {
+                    run.first_line_ms = (System.nanoTime() - start) / 1e6;
+                }
+                run.output_bytes += read;
+            }
+        }
+        run.exit_code = process.waitFor();
+        run.seconds = (System.nanoTime() - start) / 1e9;
+
+        for (String line : Files.readAllLines(stats)) {
+            String[] parts = line.split(" ");
+            run.stats.put(parts[0], Long.parseLong(parts[1]));
+        }
+        Files.delete(stats);
+        return run;
+    }
+
+    /**
+     * Splits an option string on spaces, an empty string gives no arguments.
+     */
+    private static List<String> split(String arguments) {
+        return arguments.isBlank() ? new ArrayList<>() : Arrays.asList(arguments.trim().split("\\s+"));
+    }
+}
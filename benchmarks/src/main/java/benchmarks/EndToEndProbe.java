@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * Main class of the child JVM started by EndToEndBenchmark. It runs AlignText.main with the remaining arguments, and when the
+ * JVM exits (AlignText always calls System.exit) it writes the peak resident set size and the garbage collection totals to a file.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class EndToEndProbe {
+
+    /**
+     * Runs AlignText and records the JVM's statistics on exit.
+     * @param args - the file the statistics are written to, followed by the AlignText arguments
+     */
+    public static void main(String[] args) throws ReflectiveOperationException {
+        Path stats = Paths.get(args[0]);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> writeStats(stats)));
+
+        //AlignText is in the default package, so it can only be called by name
+        Class.forName("AlignText").getMethod("main", String[].class)
+                .invoke(null, (Object) Arrays.copyOfRange(args, 1, args.length));
+    }
+
+    /**
+     * Writes the statistics as "name value" lines.
+     */
+    private static void writeStats(Path stats) {
+        long gc_count = 0, gc_time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gc_count += Math.max(0, collector.getCollectionCount());
+            gc_time += Math.max(0, collector.getCollectionTime());
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(stats))) {
+            out.println("gc_count " + gc_count);
+            out.println("gc_time_ms " + gc_time);
+            out.println("peak_rss_kb " + peakRss());
+        } catch (IOException e) {
+            System.err.println("Cannot write statistics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the peak resident set size (VmHWM) from /proc, which is only available on Linux.
+     * @return Returns the peak RSS in kilobytes, or -1 if it is not available.
+     */
+    private static long peakRss() {
+        try {
+            List<String> status = Files.readAllLines(Paths.get("/proc/self/status"));
+            for (String line : status) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
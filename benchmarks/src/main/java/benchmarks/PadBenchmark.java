@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *
+ * Benchmarks padding lines that have already been split, through every padSpaces implementation (which builds a padded String)
+ * and through the matching writeLine implementations (which copy into an OutputSink whose output is thrown away).
+ *
+ * @author Malak Sadek
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PadBenchmark {
+
+    @Param({"10", "40", "80", "200"})
+    private int limit;
+
+    @Param({"SHORT_PARAGRAPHS", "HUGE_PARAGRAPH", "LONG_WORDS", "MOSTLY_WHITESPACE"})
+    private BenchmarkCorpus.Shape shape;
+
+    /**
+     * The padded alignment to benchmark: RightAlign, CenterAlign, or HyphenateAlign with right or center alignment.
+     */
+    @Param({"R", "C", "HR", "HC"})
+    private String mode;
+
+    private List<String> lines;
+    private UnaryOperator<String> pad_spaces;
+    private Consumer<List<String>> write_lines;
+
+    /**
+     * Splits the generated input into lines and creates the alignment objects.
+     */
+    @Setup
+    public void setup() {
+        AlignmentHooks hooks = AlignmentHooks.load();
+        lines = hooks.splitString(mode.startsWith("H") ? "H" : "L", limit).apply(BenchmarkCorpus.paragraphs(shape));
+        pad_spaces = hooks.padSpaces(mode, limit);
+        write_lines = hooks.writeLines(mode, limit);
+    }
+
+    /**
+     * padSpaces, which returns a new padded String for every line.
+     */
+    @Benchmark
+    public void padSpaces(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(pad_spaces.apply(line));
+        }
+    }
+
+    /**
+     * writeLine, which copies every line and its padding into the output buffer.
+     */
+    @Benchmark
+    public void writeLine() {
+        write_lines.accept(lines);
+    }
+}
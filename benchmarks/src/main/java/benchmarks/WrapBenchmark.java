@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *
+ * Benchmarks splitting paragraphs into lines, both through splitString (which builds a String per line)
+ * and through the line breakers directly (which only produce spans).
+ *
+ * @author Malak Sadek
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapBenchmark {
+
+    @Param({"10", "40", "80", "200"})
+    private int limit;
+
+    @Param({"SHORT_PARAGRAPHS", "HUGE_PARAGRAPH", "LONG_WORDS", "MOSTLY_WHITESPACE"})
+    private BenchmarkCorpus.Shape shape;
+
+    private String[] paragraphs;
+    private Function<String[], List<String>> align_split;
+    private Function<String[], List<String>> hyphenate_split;
+    private Consumer<String[]> greedy_break;
+    private Consumer<String[]> hyphen_break;
+
+    /**
+     * Generates the input and creates the alignment objects.
+     */
+    @Setup
+    public void setup(Blackhole blackhole) {
+        AlignmentHooks hooks = AlignmentHooks.load();
+        paragraphs = BenchmarkCorpus.paragraphs(shape);
+        align_split = hooks.splitString("L", limit);
+        hyphenate_split = hooks.splitString("H", limit);
+        greedy_break = hooks.breakLines("L", limit, blackhole::consume);
+        hyphen_break = hooks.breakLines("H", limit, blackhole::consume);
+    }
+
+    /**
+     * Align.splitString, used by the left, right and center alignments.
+     */
+    @Benchmark
+    public List<String> alignSplitString() {
+        return align_split.apply(paragraphs);
+    }
+
+    /**
+     * HyphenateAlign.splitString.
+     */
+    @Benchmark
+    public List<String> hyphenateSplitString() {
+        return hyphenate_split.apply(paragraphs);
+    }
+
+    /**
+     * The greedy line breaker on its own, without creating a String per line.
+     */
+    @Benchmark
+    public void greedyBreakLines() {
+        greedy_break.accept(paragraphs);
+    }
+
+    /**
+     * The hyphenating line breaker on its own, without creating a String per line.
+     */
+    @Benchmark
+    public void hyphenBreakLines() {
+        hyphen_break.accept(paragraphs);
+    }
+}
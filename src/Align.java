@@ -1,3 +1,8 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 /**
  *
@@ -11,8 +16,23 @@ import java.util.ArrayList;
 
 public abstract class Align {
 
+    /**
+     * The line breaker is stateless so a single instance is shared by every alignment object.
+     */
+    private static final LineBreaker GREEDY = new GreedyLineBreaker();
+
+    /**
+     * Flush interval that only flushes the output when live input has to be waited for (see setFlushMillis).
+     */
+    public static final long FLUSH_IDLE = Long.MAX_VALUE;
+
     private String file_name;
     private int limit;
+    private OutputSink output;
+    private Charset charset = Charset.defaultCharset();
+    private boolean mapped;
+    private boolean follow;
+    private long flush_millis = FLUSH_IDLE;
 
     /**
      * Constructor.
@@ -39,18 +59,215 @@ public abstract class Align {
     }
 
     /**
-     * Abstract methods for adding spaces and printing the text, each specific alignment class implements their own method.
+     * Getter for the charset that the file is decoded with.
+     * @return charset (the platform default unless another one was set).
+     */
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Setter for the charset that the file is decoded with, the platform default is used unless another one is set.
+     */
+    void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Setter for whether streamed input is read by memory-mapping the file (see FileUtil.mapParagraphs) instead of through a Reader.
+     */
+    void setMapped(boolean mapped) {
+        this.mapped = mapped;
+    }
+
+    /**
+     * Setter for whether the end of the file is waited past for more text to be appended, like 'tail -f'.
+     */
+    void setFollow(boolean follow) {
+        this.follow = follow;
+    }
+
+    /**
+     * Setter for how often streamed output is flushed. Live input (standard input or a followed file) is always flushed before
+     * waiting for more input, so FLUSH_IDLE only flushes then, 0 flushes after every paragraph, and any other value also
+     * flushes at least that many milliseconds after the last flush while the input keeps coming.
+     */
+    void setFlushMillis(long flush_millis) {
+        this.flush_millis = flush_millis;
+    }
+
+    /**
+     * Setter for hyphenation patterns, only the hyphenated and justified alignments use them so the others ignore them.
+     */
+    void setHyphenator(Hyphenator hyphenator) {
+    }
+
+    /**
+     * Checks whether the input is live, which is when it is standard input ("-") or a followed file.
+     */
+    boolean isLive() {
+        return follow || file_name.equals("-");
+    }
+
+    /**
+     * Opens the file whose name and path are stored in the class' file_name variable as a source of paragraphs.
+     * @return Returns a source of live input if isLive, a source of Tokens if the file is a tokens file (see TokenFile),
+     * a memory-mapped source if mapped is set, or a Reader based one otherwise (from FileUtil).
+     */
+    ParagraphSource openParagraphs() {
+        if (AlignStats.isEnabled() && !isLive()) {
+            AlignStats.count(AlignStats.Counter.BYTES_IN, new File(file_name).length());
+        }
+        if (isLive()) {
+            return FileUtil.followParagraphs(file_name, charset, follow);
+        }
+        if (TokenFile.isTokenFile(file_name)) {
+            return FileUtil.openTokens(file_name);
+        }
+        if (mapped) {
+            return FileUtil.mapParagraphs(file_name, charset);
+        }
+        return FileUtil.openParagraphs(file_name, charset);
+    }
+
+    /**
+     * Opens the file as a source of paragraphs the same way as openParagraphs, for input that is not live.
+     * Unlike openParagraphs, a file that cannot be opened is thrown to the caller instead of being printed and read as an empty paragraph,
+     * so that it can be reported (see BatchAligner).
+     * @throws IOException if the file cannot be opened
+     */
+    ParagraphSource openSource() throws IOException {
+        if (AlignStats.isEnabled()) {
+            AlignStats.count(AlignStats.Counter.BYTES_IN, new File(file_name).length());
+        }
+        if (TokenFile.isTokenFile(file_name)) {
+            return new TokenParagraphSource(file_name);
+        }
+        if (mapped && MappedParagraphSource.isSupported(charset)) {
+            return new MappedParagraphSource(file_name, charset);
+        }
+        return new ReaderParagraphSource(new InputStreamReader(new FileInputStream(file_name), charset));
+    }
+
+    /**
+     * Getter for the output sink, standard output is used unless another sink has been set.
+     * @return output (where the aligned text is written).
+     */
+    OutputSink getOutput() {
+        if (output == null) {
+            output = OutputSink.stdout();
+        }
+        return output;
+    }
+
+    /**
+     * Setter for the output sink, allows the aligned text to be written to a file or channel instead of standard output.
+     */
+    void setOutput(OutputSink output) {
+        this.output = output;
+    }
+
+    /**
+     * Abstract methods for adding spaces, each specific alignment class implements their own method.
+     * padSpaces returns a padded copy of a line, and spacesBefore gives the number of spaces that go before a line of the given length,
+     * so that lines can also be padded while they are written without building a padded String first.
      */
     abstract String padSpaces(String line);
-    abstract void print(ArrayList<String> lines);
+    abstract int spacesBefore(int length);
+
+    /**
+     * Gives the align_mode this object was created for, HyphenateAlign includes its sub-alignment (e.g. "HC").
+     * Used to tell apart cached output that was aligned with different settings.
+     */
+    abstract String getMode();
+
+    /**
+     * Gives the number of spaces that go after a line of the given length, only center alignment adds spaces after the text.
+     * @return Returns zero unless overridden.
+     */
+    int spacesAfter(int length) {
+        return 0;
+    }
+
+    /**
+     * Tells whether lines are padded at all, so that the width of a line is only measured when it is needed.
+     * @return Returns true unless overridden by an alignment whose spacesBefore and spacesAfter are always zero.
+     */
+    boolean isPadded() {
+        return true;
+    }
+
+    /**
+     * Writes the line text[start, end) (followed by a hyphen if hyphen is true) to out with the alignment's padding,
+     * copying the characters and spaces straight into the sink.
+     */
+    void writeLine(OutputSink out, CharSequence text, int start, int end, boolean hyphen) {
+        if (AlignStats.isEnabled()) {
+            writeLineTimed(out, text, start, end, hyphen);
+            return;
+        }
+        if (!isPadded()) {
+            out.write(text, start, end, hyphen);
+            out.newline();
+            return;
+        }
+        int length = DisplayWidth.width(text, start, end) + (hyphen ? 1 : 0);
+        out.pad(spacesBefore(length));
+        out.write(text, start, end, hyphen);
+        out.pad(spacesAfter(length));
+        out.newline();
+    }
+
+    /**
+     * Writes a line the same way as writeLine, adding the time taken to measure its width and add the spaces to the pad stage
+     * and the time taken to copy it to the write stage.
+     */
+    private void writeLineTimed(OutputSink out, CharSequence text, int start, int end, boolean hyphen) {
+        long begin = System.nanoTime();
+        int length = isPadded() ? DisplayWidth.width(text, start, end) + (hyphen ? 1 : 0) : 0;
+        out.pad(spacesBefore(length));
+        long padded = System.nanoTime();
+        out.write(text, start, end, hyphen);
+        long written = System.nanoTime();
+        out.pad(spacesAfter(length));
+        out.newline();
+        long finish = System.nanoTime();
+        AlignStats.line(padded - begin + finish - written, written - padded);
+    }
+
+    /**
+     * Prints the lines of text with the alignment's padding.
+     * @param lines contains the lines of text that have been split according to the line length
+     */
+    void print(ArrayList<String> lines) {
+        StageEvent event = AlignStats.begin("write");
+        long allocated = AlignStats.isEnabled() ? AlignStats.allocated() : 0;
+        OutputSink out = getOutput();
+        for (String line : lines) {
+            writeLine(out, line, 0, line.length(), false);
+        }
+        long start = System.nanoTime();
+        out.flush();
+        if (AlignStats.isEnabled()) {
+            AlignStats.stage(AlignStats.Stage.WRITE, start, allocated);
+        }
+        AlignStats.end(event, 0);
+    }
 
     /**
      * Reads the contents of the file whose name and path are stored in the class' file_name variable.
      * @return Returns an array of Strings, each string representing a paragraph of text from the file (from FileUtil).
      */
     String[] readFile() {
+        StageEvent event = AlignStats.begin("read");
+        long start = System.nanoTime(), allocated = AlignStats.isEnabled() ? AlignStats.allocated() : 0;
 
-        String[] paragraphs = FileUtil.readFile(file_name);
+        String[] paragraphs = FileUtil.readFile(file_name, charset);
+        if (AlignStats.isEnabled()) {
+            AlignStats.stage(AlignStats.Stage.READ, start, allocated);
+            AlignStats.count(AlignStats.Counter.BYTES_IN, new File(file_name).length());
+        }
+        AlignStats.end(event, paragraphs.length);
 
         //If paragraphs returns as zero, then there was a problem reading the file or the file was empty
         if (paragraphs.length == 0) {
@@ -60,65 +277,211 @@ public abstract class Align {
         return paragraphs;
     }
 
+    /**
+     * Reads the file one paragraph at a time and splits and writes each paragraph before reading the next one.
+     * This produces the same output as print(splitString(readFile())), but only the current paragraph is held in memory
+     * and the first lines are printed straight away instead of after the whole file has been read.
+     */
+    void stream() {
+        StageEvent event = AlignStats.begin("stream");
+        long allocated = AlignStats.isEnabled() ? AlignStats.allocated() : 0, count = 0;
+        try (ParagraphSource source = openParagraphs()) {
+            CharSequence paragraph = AlignStats.nextText(source);
+
+            //If there is no first paragraph, then the file was empty (the same check as readFile)
+            if (paragraph == null) {
+                System.out.print("usage: java AlignText file_name line_length [align_mode]");
+                System.exit(1);
+            }
+
+            OutputSink out = getOutput();
+            long interval = flush_millis;
+            if (source instanceof FollowParagraphSource) {
+                ((FollowParagraphSource) source).setIdle(out::flush);
+            } else if (isLive() && interval == FLUSH_IDLE) {
+                //Live input that cannot tell when it is idle is flushed after every paragraph instead
+                interval = 0;
+            }
+            long last_flush = System.nanoTime();
+            while (paragraph != null) {
+                writeParagraph(source, paragraph, out);
+                if (interval != FLUSH_IDLE && (interval == 0 || System.nanoTime() - last_flush >= interval * 1000000L)) {
+                    out.flush();
+                    last_flush = System.nanoTime();
+                }
+                paragraph = AlignStats.nextText(source);
+                count++;
+            }
+            out.flush();
+            if (AlignStats.isEnabled()) {
+                AlignStats.count(AlignStats.Counter.ALLOCATED_BYTES, AlignStats.allocated() - allocated);
+            }
+            AlignStats.end(event, count);
+        } catch (IOException e) {
+            getOutput().flush();
+            System.out.println("I/O Ooops: " + e.getMessage());
+        }
+    }
+
     /**
      * Splits the text lines in different ways based on several cases. This is implemented as a concrete method as all specific alignment classes use the same one
      * @param paragraphs contains the paragraphs of text found inside the supplied file
      * @return Returns an ArrayList of strings, each containing a single line from the original text that has been split appropriately.
      */
     ArrayList<String> splitString(String[] paragraphs) {
+        StageEvent event = AlignStats.begin("wrap");
+        long start = System.nanoTime(), allocated = AlignStats.isEnabled() ? AlignStats.allocated() : 0;
 
         ArrayList<String> lines = new ArrayList<>();
 
         //Iterates over each paragraph in the text (obtained from lecture slides)
         for (String paragraph : paragraphs) {
-            int prev = 0, index;
+            splitParagraph(paragraph, lines);
+        }
+        if (AlignStats.isEnabled()) {
+            AlignStats.stage(AlignStats.Stage.WRAP, start, allocated);
+        }
+        AlignStats.end(event, paragraphs.length);
+        //Now lines contains each line of text after they have been split according to the line length
+        return lines;
+    }
 
-            //Each iteration removes a part of paragraph, and so if it's still larger than the limit, it means there's still lines to be split
-            while (paragraph.length() > limit) {
+    /**
+     * Returns the line breaking engine used to split paragraphs, subclasses that need different functionality override this method.
+     * @return Returns the greedy line breaker shared by the left, right and center alignments.
+     */
+    LineBreaker getLineBreaker() {
+        return GREEDY;
+    }
 
-                //Finds the index of first space starting from the previous search (prev+1 because using prev would get the same space each time)
-                index = paragraph.indexOf(' ', prev + 1);
+    /**
+     * Prints only the aligned lines from index from up to to (counting from 0), which are the same as those lines of the whole output.
+     * With an index (see LineIndex) reading starts at the last checkpoint before line from, otherwise at the start of the file,
+     * and it stops after the paragraph that line to - 1 is in, so only the paragraphs since the checkpoint are split.
+     * @param index an index that has the alignment's layout and is up to date with the file, or null to read the file from the start
+     */
+    void printLines(LineIndex index, long from, long to) {
+        StageEvent event = AlignStats.begin("lines");
+        long count = 0;
+        OutputSink out = getOutput();
+        //Lines before from are only counted, and the line breaker finishes the paragraph that line to - 1 is in
+        long[] line = new long[1];
+        LineSink sink = (text, start, end, hyphen) -> {
+            if (line[0] >= from && line[0] < to) {
+                writeLine(out, text, start, end, hyphen);
+            }
+            line[0]++;
+        };
+        try (ParagraphSource source = openParagraphs()) {
+            if (index != null) {
+                int layout = index.layout(this);
+                int checkpoint = index.checkpoint(layout, from);
+                source.seek(index.offset(checkpoint));
+                line[0] = index.lines(layout, checkpoint);
+            }
+            CharSequence text;
+            while (line[0] < to && (text = AlignStats.nextText(source)) != null) {
+                writeParagraph(source, text, sink);
+                count++;
+            }
+            out.flush();
+            AlignStats.end(event, count);
+        } catch (IOException e) {
+            out.flush();
+            System.out.println("I/O Ooops: " + e.getMessage());
+        }
+    }
 
-                //prev == 0 indicates that this is the first iteration, and index == -1 indicates that no spaces were found
-                //This means that the paragraph is only one word that is longer than the line length, we put it as is and move onto the next paragraph
-                if (index == -1 && prev == 0) {
-                    lines.add(paragraph);
-                    prev = 0;
-                    //Ends current paragraph
-                    paragraph = paragraph.substring(paragraph.length());
-                }
+    /**
+     * Splits a single paragraph and writes its lines with the alignment's padding.
+     * Lines go straight from the line breaker to the output sink, so no Strings are created for them.
+     * @param paragraph contains one paragraph of text from the supplied file
+     * @param out the sink that the aligned lines are written to
+     */
+    void writeParagraph(CharSequence paragraph, OutputSink out) {
+        LineSink sink = (text, start, end, hyphen) -> writeLine(out, text, start, end, hyphen);
+        if (AlignStats.isEnabled()) {
+            AlignStats.count(AlignStats.Counter.PARAGRAPHS, 1);
+            long start = System.nanoTime(), nested = AlignStats.nested();
+            getLineBreaker().breakLines(paragraph, limit, AlignStats.counting(sink, limit));
+            AlignStats.wrapped(start, nested);
+            return;
+        }
+        getLineBreaker().breakLines(paragraph, limit, sink);
+    }
 
-                //index==limit indicates that a word has ended at the limit, so we split at the end of the word and remove the line from paragraph
-                //index > limit && prev == 0 indicates that there is a word longer than the limit, but it is not the only word in the paragraph,
-                //so we put it on a separate line and continue
-                else if (index == limit || (index > limit && prev == 0)) {
-                    lines.add(paragraph.substring(0, index));
-                    paragraph = paragraph.substring(index + 1);
-                    prev = 0;
+    /**
+     * Splits a paragraph that is read from source, which may hand it out in windows if it is very long (see ParagraphSource.isComplete).
+     * Each window is split as far as possible and then only the rest of the last line is kept while more of the paragraph is read,
+     * so the memory used does not grow with the length of the paragraph, only with its longest line or word.
+     * @param text the first window of the paragraph, as returned by source.nextText
+     */
+    void writeParagraph(ParagraphSource source, CharSequence text, OutputSink out) throws IOException {
+        writeParagraph(source, text, (line, start, end, hyphen) -> writeLine(out, line, start, end, hyphen));
+    }
 
-                }
+    /**
+     * Splits a paragraph that is read from source the same way, but gives its lines to sink instead of writing them.
+     */
+    void writeParagraph(ParagraphSource source, CharSequence text, LineSink sink) throws IOException {
+        boolean measured = AlignStats.isEnabled();
+        if (measured) {
+            AlignStats.count(AlignStats.Counter.PARAGRAPHS, 1);
+            sink = AlignStats.counting(sink, limit);
+        }
+        boolean continued = false;
+        while (!source.isComplete()) {
+            long start = System.nanoTime(), nested = measured ? AlignStats.nested() : 0;
+            int consumed = getLineBreaker().breakLines(text, limit, sink, continued, false);
+            if (measured) {
+                AlignStats.wrapped(start, nested);
+            }
+            continued |= consumed > 0;
+            text = AlignStats.moreText(source, consumed);
+        }
+        long start = System.nanoTime(), nested = measured ? AlignStats.nested() : 0;
+        getLineBreaker().breakLines(text, limit, sink, continued, true);
+        if (measured) {
+            AlignStats.wrapped(start, nested);
+        }
+    }
 
-                //index > limit indicates that the limit is in the middle of a word, in that case we split at the previous word
-                //and add the current word to a new line
-                //index == -1 indicates that no spaces were found, but it's not the first word, which means it's the last word,
-                //so we put it in a line on its own
-                else if (index > limit || index == -1) {
-                    lines.add(paragraph.substring(0, prev));
-                    paragraph = paragraph.substring(prev + 1);
-                    prev = 0;
-                }
+    /**
+     * Splits and pads the paragraphs from index from up to to into a byte array instead of writing them to the output.
+     * Used to align parts of the text on other threads before they are written out in order.
+     * @param paragraphs the paragraphs, which can also be Tokens that are shared with other threads (see Tokens.complete)
+     * @param charset the charset the text is encoded with (the same as the output's)
+     * @return Returns the aligned paragraphs as encoded bytes.
+     */
+    byte[] render(CharSequence[] paragraphs, int from, int to, Charset charset) {
+        StageEvent event = AlignStats.begin("render");
+        long allocated = AlignStats.isEnabled() ? AlignStats.allocated() : 0;
+        OutputSink out = OutputSink.toMemory(charset, OutputSink.BUFFER_SIZE);
+        for (int i = from; i < to; i++) {
+            writeParagraph(paragraphs[i], out);
+        }
+        byte[] result = out.toByteArray();
+        if (AlignStats.isEnabled()) {
+            AlignStats.count(AlignStats.Counter.ALLOCATED_BYTES, AlignStats.allocated() - allocated);
+        }
+        AlignStats.end(event, to - from);
+        return result;
+    }
 
-                //updates previous each iteration
-                else {
-                    prev = index;
-                }
-                //If the remaining words are less than the limit, then we just add all of them and continue to the next paragraph
-                if (paragraph.length() < limit) {
-                    lines.add(paragraph);
-                }
-            }
+    /**
+     * Splits a single paragraph into lines according to the line length using the alignment's line breaker.
+     * @param paragraph contains one paragraph of text from the supplied file
+     * @param lines the list that the split lines of the paragraph are added to
+     */
+    void splitParagraph(String paragraph, ArrayList<String> lines) {
+        LineSink sink = (text, start, end, hyphen) -> {
+            String line = text.subSequence(start, end).toString();
+            lines.add(hyphen ? line + '-' : line);
+        };
+        if (AlignStats.isEnabled()) {
+            AlignStats.count(AlignStats.Counter.PARAGRAPHS, 1);
+            sink = AlignStats.counting(sink, limit);
         }
-        //Now lines contains each line of text after they have been split according to the line length
-        return lines;
+        getLineBreaker().breakLines(paragraph, limit, sink);
     }
 }
@@ -0,0 +1,479 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * Content-addressed cache of aligned output, so text that is aligned again with the same settings is not split again.
+ * Entries are keyed by a SHA-256 hash of the text, the line length, the align_mode (including HyphenateAlign's sub-alignment),
+ * the output charset and ENGINE_VERSION. Whole documents and single paragraphs are both cached, so a document where one
+ * paragraph changed only splits that paragraph and reuses the cached output of all the others.
+ * The entries are kept in memory and optionally in a directory on disk, both are bounded in size and evict the least
+ * recently used entries first. Only whole documents are stored on disk, as a file for every paragraph would fill the directory
+ * with small files, so paragraphs are only cached in memory. The cache can be shared by several threads.
+ * Large documents can also be streamed through the cache (see stream), so they are never held in memory whole.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class AlignCache {
+
+    /**
+     * Part of every key, it has to be changed whenever a change to the alignment code changes its output so old entries are not used.
+     */
+    public static final String ENGINE_VERSION = "2";
+
+    /**
+     * Default size of the in-memory cache in bytes.
+     */
+    public static final long DEFAULT_MEMORY_SIZE = 64L << 20;
+
+    /**
+     * Default size of the on-disk cache in bytes.
+     */
+    public static final long DEFAULT_DISK_SIZE = 1L << 30;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    //Number of bytes the text is fed to the digests in at a time
+    private static final int HASH_CHUNK = 1 << 12;
+
+    private LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memory_size;
+    private long memory_limit;
+    private Path directory;
+    private long disk_limit;
+    private AtomicLong disk_size = new AtomicLong();
+    private AtomicLong document_hits = new AtomicLong();
+    private AtomicLong document_misses = new AtomicLong();
+    private AtomicLong paragraph_hits = new AtomicLong();
+    private AtomicLong paragraph_misses = new AtomicLong();
+
+    /**
+     * Constructor for a cache that is only kept in memory.
+     * @param memory_limit maximum number of bytes of aligned output kept in memory
+     */
+    AlignCache(long memory_limit) {
+        this.memory_limit = memory_limit;
+    }
+
+    /**
+     * Constructor for a cache that is also kept in a directory, which is created if needed. Entries left by earlier runs are reused.
+     * @param memory_limit maximum number of bytes of aligned output kept in memory
+     * @param directory where the entries are stored on disk
+     * @param disk_limit maximum number of bytes stored in directory
+     */
+    AlignCache(long memory_limit, Path directory, long disk_limit) throws IOException {
+        this(memory_limit);
+        this.directory = directory;
+        this.disk_limit = disk_limit;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                disk_size.addAndGet(Files.size(entry));
+            }
+        }
+        evictDisk();
+    }
+
+    /**
+     * Aligns the paragraphs of a document, the same as Align.render, using the cached output of the whole document
+     * or of its single paragraphs when there is one.
+     * @param align the alignment object that splits and pads the paragraphs on a miss
+     * @param paragraphs contains the paragraphs of the document
+     * @param charset the charset the output is encoded with
+     * @return Returns the encoded aligned text.
+     */
+    byte[] render(Align align, String[] paragraphs, Charset charset) {
+        MessageDigest digest = newDigest(align, charset);
+        byte[] scratch = new byte[HASH_CHUNK];
+        for (String paragraph : paragraphs) {
+            update(digest, paragraph, scratch);
+            update(digest, "\n", scratch);
+        }
+        String key = "d" + hex(digest.digest());
+        byte[] result = get(key);
+        if (result != null) {
+            document_hits.incrementAndGet();
+            return result;
+        }
+        document_misses.incrementAndGet();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(OutputSink.BUFFER_SIZE);
+        for (int i = 0; i < paragraphs.length; i++) {
+            byte[] lines = renderParagraph(align, paragraphs[i], charset);
+            out.write(lines, 0, lines.length);
+        }
+        result = out.toByteArray();
+        put(key, result);
+        return result;
+    }
+
+    /**
+     * Aligns a document that is read one paragraph at a time by align (see Align.openSource) and writes it to out as it goes,
+     * using the cached output of the whole document or of its single paragraphs when there is one, the same as render does.
+     * The document is read once to work out its key, and on a miss it is read again and aligned. The output is also written to a new
+     * entry on disk as it goes, unless the document is larger than the disk limit, so the whole output is never held in memory.
+     * @return Returns false if the document has no paragraphs, the same as an empty file for Align.stream.
+     * @throws IOException if the document cannot be opened or read, or a cached entry cannot be copied
+     */
+    boolean stream(Align align, OutputSink out) throws IOException {
+        Charset charset = out.getCharset();
+        MessageDigest digest = newDigest(align, charset);
+        byte[] scratch = new byte[HASH_CHUNK];
+        long paragraphs = 0;
+        try (ParagraphSource source = align.openSource()) {
+            CharSequence text;
+            while ((text = AlignStats.nextText(source)) != null) {
+                //Very long paragraphs are hashed one window at a time, which gives the same hash as the whole paragraph
+                update(digest, text, scratch);
+                while (!source.isComplete()) {
+                    text = AlignStats.moreText(source, text.length());
+                    update(digest, text, scratch);
+                }
+                update(digest, "\n", scratch);
+                paragraphs++;
+            }
+        }
+        if (paragraphs == 0) {
+            return false;
+        }
+        String key = "d" + hex(digest.digest());
+        if (copy(key, out)) {
+            document_hits.incrementAndGet();
+            return true;
+        }
+        document_misses.incrementAndGet();
+
+        //The output is copied into a temporary file that becomes the document's entry if the document is small enough to be stored
+        Path temporary = null;
+        OutputSink copy = null;
+        if (directory != null && new File(align.getFileName()).length() <= disk_limit) {
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            copy = new OutputSink(FileChannel.open(temporary, StandardOpenOption.WRITE), charset);
+        }
+        OutputSink entry = copy;
+        LineSink sink = (line, start, end, hyphen) -> {
+            align.writeLine(out, line, start, end, hyphen);
+            if (entry != null) {
+                align.writeLine(entry, line, start, end, hyphen);
+            }
+        };
+        try (ParagraphSource source = align.openSource()) {
+            CharSequence text;
+            while ((text = AlignStats.nextText(source)) != null) {
+                //A paragraph that is read in windows is too long to keep whole, so it is aligned without the paragraph cache
+                if (!source.isComplete()) {
+                    align.writeParagraph(source, text, sink);
+                    continue;
+                }
+                byte[] lines = renderParagraph(align, text.toString(), charset);
+                out.write(lines, 0, lines.length);
+                if (copy != null) {
+                    copy.write(lines, 0, lines.length);
+                }
+            }
+            out.flush();
+            if (copy != null) {
+                copy.close();
+                if (copy.size() <= disk_limit) {
+                    store(temporary, key, copy.size());
+                    temporary = null;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            //The sinks report write errors unchecked
+            throw e.getCause();
+        } finally {
+            if (temporary != null) {
+                if (copy != null) {
+                    copy.close();
+                }
+                Files.deleteIfExists(temporary);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the cached output of a document to out, copying an entry on disk one block at a time instead of reading it whole.
+     * @return Returns false if the document is not cached.
+     * @throws IOException if the entry cannot be read after part of it has been written
+     */
+    private boolean copy(String key, OutputSink out) throws IOException {
+        byte[] result;
+        synchronized (memory) {
+            result = memory.get(key);
+        }
+        if (result != null) {
+            out.write(result, 0, result.length);
+            return true;
+        }
+        if (directory == null) {
+            return false;
+        }
+        Path file = directory.resolve(key);
+        FileChannel in;
+        try {
+            in = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            //A missing or unreadable entry is treated as a miss
+            return false;
+        }
+        try (in) {
+            ByteBuffer buffer = ByteBuffer.allocate(OutputSink.BUFFER_SIZE);
+            while (in.read(buffer) > 0) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        //The modification time records when the entry was last used, which is what the disk eviction goes by
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Aligns a single paragraph using its cached output when there is one.
+     * @return Returns the encoded aligned lines of the paragraph.
+     */
+    byte[] renderParagraph(Align align, String paragraph, Charset charset) {
+        //Paragraphs that fit on a line are aligned without any splitting, so they are not worth a lookup
+        if (paragraph.length() <= align.getLimit()) {
+            return render(align, paragraph, charset);
+        }
+        MessageDigest digest = newDigest(align, charset);
+        update(digest, paragraph, new byte[HASH_CHUNK]);
+        String key = "p" + hex(digest.digest());
+        byte[] result;
+        synchronized (memory) {
+            result = memory.get(key);
+        }
+        if (result != null) {
+            paragraph_hits.incrementAndGet();
+            return result;
+        }
+        paragraph_misses.incrementAndGet();
+        result = render(align, paragraph, charset);
+        //Paragraphs are only kept in memory, see the class comment
+        putMemory(key, result);
+        return result;
+    }
+
+    /**
+     * Aligns a single paragraph into a buffer sized for it, as a buffer of the full OutputSink.BUFFER_SIZE for every paragraph
+     * of a large document costs more than aligning it.
+     */
+    private static byte[] render(Align align, String paragraph, Charset charset) {
+        OutputSink out = OutputSink.toMemory(charset, Math.min(OutputSink.BUFFER_SIZE, 2 * paragraph.length() + 64));
+        align.writeParagraph(paragraph, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Gives a summary of the lookups made so far.
+     * @return Returns the number of hits and misses and the hit rate of documents and paragraphs.
+     */
+    String stats() {
+        return "cache: documents " + rate(document_hits.get(), document_misses.get())
+                + ", paragraphs " + rate(paragraph_hits.get(), paragraph_misses.get());
+    }
+
+    /**
+     * Formats a number of hits and misses as 'hits/lookups hits (rate%)'.
+     */
+    private static String rate(long hits, long misses) {
+        long lookups = hits + misses;
+        return hits + "/" + lookups + " hits (" + (lookups == 0 ? 0 : hits * 100 / lookups) + "%)";
+    }
+
+    /**
+     * Creates a digest that has already been fed the settings that are part of every key.
+     */
+    private static MessageDigest newDigest(Align align, Charset charset) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String settings = ENGINE_VERSION + '\0' + align.getMode() + '\0' + align.getLimit() + '\0' + charset.name() + '\0';
+            digest.update(settings.getBytes(StandardCharsets.UTF_8));
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Feeds the UTF-16 code units of text to a digest, a block at a time through scratch.
+     * Unlike encoding the text, this gives the same result when the text is fed in several parts, however it was split.
+     */
+    private static void update(MessageDigest digest, CharSequence text, byte[] scratch) {
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int stop = Math.min(length, i + scratch.length / 2);
+            int count = 0;
+            for (; i < stop; i++) {
+                char c = text.charAt(i);
+                scratch[count++] = (byte) (c >> 8);
+                scratch[count++] = (byte) c;
+            }
+            digest.update(scratch, 0, count);
+        }
+    }
+
+    /**
+     * Converts a hash to the hexadecimal string used as its key and file name.
+     */
+    private static String hex(byte[] hash) {
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Looks an entry up in memory and then on disk, an entry found on disk is also kept in memory.
+     * @return Returns the cached output, or null if there is none.
+     */
+    private byte[] get(String key) {
+        synchronized (memory) {
+            byte[] result = memory.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(key);
+        try {
+            byte[] result = Files.readAllBytes(file);
+            //The modification time records when the entry was last used, which is what the disk eviction goes by
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            putMemory(key, result);
+            return result;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            //An unreadable entry is treated as a miss
+            return null;
+        }
+    }
+
+    /**
+     * Stores a document's entry in memory and on disk.
+     */
+    private void put(String key, byte[] result) {
+        putMemory(key, result);
+        if (directory == null || result.length > disk_limit) {
+            return;
+        }
+        try {
+            //Written to a temporary file first so other threads and processes never see a partly written entry
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, result);
+            store(temporary, key, result.length);
+        } catch (IOException e) {
+            //The cache is only an optimisation, so failing to store an entry is not an error
+        }
+    }
+
+    /**
+     * Moves a completely written temporary file into place as the entry on disk for key.
+     * @param size the size of the file
+     */
+    private void store(Path temporary, String key, long size) throws IOException {
+        Path file = directory.resolve(key);
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (disk_size.addAndGet(size) > disk_limit) {
+            evictDisk();
+        }
+    }
+
+    /**
+     * Stores an entry in memory and evicts the least recently used entries until the memory cache fits in its limit.
+     */
+    private void putMemory(String key, byte[] result) {
+        if (result.length > memory_limit) {
+            return;
+        }
+        synchronized (memory) {
+            byte[] old = memory.put(key, result);
+            memory_size += result.length - (old == null ? 0 : old.length);
+            Iterator<Map.Entry<String, byte[]>> entries = memory.entrySet().iterator();
+            while (memory_size > memory_limit && entries.hasNext()) {
+                memory_size -= entries.next().getValue().length;
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files once the on-disk cache has grown past its limit.
+     */
+    private synchronized void evictDisk() throws IOException {
+        if (disk_size.get() <= disk_limit) {
+            return;
+        }
+        ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                files.add(entry);
+            }
+        }
+        //Files can be deleted by other processes sharing the directory, so the times are read once before sorting
+        Map<Path, Long> times = new LinkedHashMap<>();
+        long total = 0;
+        for (Path file : files) {
+            try {
+                times.put(file, Files.getLastModifiedTime(file).toMillis());
+                total += Files.size(file);
+            } catch (NoSuchFileException e) {
+                times.remove(file);
+            }
+        }
+        files = new ArrayList<>(times.keySet());
+        files.sort(Comparator.comparing(times::get));
+
+        //Evicts down to 90% of the limit, so the directory is not listed again for every entry stored once the cache is full
+        long target = disk_limit - disk_limit / 10;
+        for (Path file : files) {
+            if (total <= target) {
+                break;
+            }
+            try {
+                long size = Files.size(file);
+                Files.delete(file);
+                total -= size;
+            } catch (NoSuchFileException e) {
+                //Already evicted by someone else
+            }
+        }
+        disk_size.set(total);
+    }
+}
@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * Streams a file through three stages that run at the same time: a reader thread reads and decodes paragraphs into batches,
+ * a pool of worker threads splits and pads the batches, and the calling thread writes the aligned batches out in their original order.
+ * The stages are connected by a bounded queue, so reading from disk overlaps with aligning, and the reader waits when the
+ * workers or the writer fall behind, which keeps the memory used constant no matter how big the file is.
+ * Paragraphs of a tokens file are handed to the workers as the Tokens they were read as, so they are not decoded or split again.
+ * A paragraph that is too long to be read whole (see ParagraphSource.isComplete) is aligned by the reader a window at a time instead,
+ * and its output is put in the queue in parts as it is written, so it is never held in memory whole either.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class AlignPipeline {
+
+    /**
+     * Number of characters of text that are read into one batch.
+     */
+    public static final int BATCH_SIZE = 1 << 16;
+
+    /**
+     * Number of batches per worker thread that can be waiting to be written before the reader has to wait.
+     */
+    public static final int BATCHES_PER_THREAD = 2;
+
+    /**
+     * Marks the end of the input in the queue.
+     */
+    private static final CompletableFuture<byte[]> END = CompletableFuture.completedFuture(null);
+
+    private Align align;
+    private int threads;
+
+    /**
+     * Constructor.
+     * @param align the alignment object used to split and pad every batch (only its read-only methods are used by the threads)
+     * @param threads number of worker threads
+     */
+    AlignPipeline(Align align, int threads) {
+        this.align = align;
+        this.threads = threads;
+    }
+
+    /**
+     * Streams the alignment object's file through the pipeline and writes the aligned text to its output.
+     * Produces the same output as Align.stream.
+     */
+    void run() {
+        ParagraphSource source = align.openParagraphs();
+        OutputSink out = align.getOutput();
+        CharSequence first;
+        try {
+            first = AlignStats.nextBoundedText(source);
+        } catch (IOException e) {
+            System.out.println("I/O Ooops: " + e.getMessage());
+            return;
+        }
+
+        //If there is no first paragraph, then the file was empty (the same check as readFile)
+        if (first == null) {
+            System.out.print("usage: java AlignText file_name line_length [align_mode]");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        BlockingQueue<CompletableFuture<byte[]>> queue = new ArrayBlockingQueue<>(threads * BATCHES_PER_THREAD);
+        Thread reader = new Thread(() -> read(source, first, out.getCharset(), pool, queue), "AlignPipeline-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        //The writer takes the batches in the order they were read and waits for each one to be aligned
+        try {
+            CompletableFuture<byte[]> batch;
+            while ((batch = queue.take()) != END) {
+                byte[] bytes = batch.join();
+                out.write(bytes, 0, bytes.length);
+            }
+            out.flush();
+        } catch (CompletionException e) {
+            //Only the reader fails with an IOException, anything else is a bug in the workers
+            if (!(e.getCause() instanceof IOException)) {
+                throw e;
+            }
+            out.flush();
+            System.out.println("I/O Ooops: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Reader stage, reads paragraphs into batches of about BATCH_SIZE characters and hands each batch to the workers.
+     * The future of every batch is put in the queue in order, the queue is full when the writer falls behind and then put waits.
+     * A paragraph that is read in windows ends the batch before it and is aligned here, its parts are put in the queue as they are written.
+     */
+    private void read(ParagraphSource source, CharSequence first, Charset charset, ForkJoinPool pool,
+            BlockingQueue<CompletableFuture<byte[]>> queue) {
+        try (source) {
+            CharSequence paragraph = first;
+            ArrayList<CharSequence> batch = new ArrayList<>();
+            int size = 0;
+            while (paragraph != null) {
+                if (source.isComplete()) {
+                    batch.add(paragraph);
+                    //Each paragraph also ends with a new line
+                    size += paragraph.length() + 1;
+                } else {
+                    submit(batch, charset, pool, queue);
+                    size = 0;
+                    try (OutputSink parts = OutputSink.toParts(new QueueChannel(queue), charset)) {
+                        align.writeParagraph(source, paragraph, parts);
+                    }
+                }
+                if (size >= BATCH_SIZE) {
+                    submit(batch, charset, pool, queue);
+                    size = 0;
+                }
+                paragraph = AlignStats.nextBoundedText(source);
+            }
+            submit(batch, charset, pool, queue);
+        } catch (UncheckedIOException e) {
+            //The parts of a long paragraph are written through a sink, which reports errors unchecked
+            putQuietly(queue, CompletableFuture.failedFuture(e.getCause()));
+            return;
+        } catch (IOException e) {
+            putQuietly(queue, CompletableFuture.failedFuture(e));
+        } catch (InterruptedException e) {
+            return;
+        }
+        putQuietly(queue, END);
+    }
+
+    /**
+     * Hands the paragraphs of a batch to the workers, if there are any, and empties it.
+     */
+    private void submit(ArrayList<CharSequence> batch, Charset charset, ForkJoinPool pool,
+            BlockingQueue<CompletableFuture<byte[]>> queue) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        CharSequence[] paragraphs = batch.toArray(new CharSequence[0]);
+        batch.clear();
+        queue.put(CompletableFuture.supplyAsync(() -> align.render(paragraphs, 0, paragraphs.length, charset), pool));
+    }
+
+    /**
+     * Channel that puts every part of the output written to it in the queue as a batch that is already aligned.
+     */
+    private static class QueueChannel implements WritableByteChannel {
+
+        private BlockingQueue<CompletableFuture<byte[]>> queue;
+
+        /**
+         * Constructor.
+         */
+        QueueChannel(BlockingQueue<CompletableFuture<byte[]>> queue) {
+            this.queue = queue;
+        }
+
+        /**
+         * Copies the bytes into a new part and puts it in the queue, waiting while the queue is full.
+         */
+        @Override
+        public int write(ByteBuffer bytes) throws IOException {
+            byte[] part = new byte[bytes.remaining()];
+            bytes.get(part);
+            try {
+                queue.put(CompletableFuture.completedFuture(part));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing a paragraph");
+            }
+            return part.length;
+        }
+
+        /**
+         * The channel is always open, the queue is ended by the reader.
+         */
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        /**
+         * Does nothing, the queue is ended by the reader.
+         */
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Puts an item in the queue, giving up if the thread is interrupted.
+     */
+    private static void putQuietly(BlockingQueue<CompletableFuture<byte[]>> queue, CompletableFuture<byte[]> item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ *
+ * Long-running alignment server, so that a warmed-up JVM can align many files without starting a new JVM for each one.
+ * It listens on the loopback interface only and accepts jobs as HTTP requests to /align:
+ *
+ *   GET  /align?file=path&amp;limit=80&amp;mode=C     aligns a file that the server can read
+ *   POST /align?limit=80&amp;mode=C                  aligns the text in the request body
+ *
+ * mode takes the same values as AlignText's align_mode (defaults to L) and charset sets the text's charset (defaults to UTF-8).
+ * The aligned text is streamed back as it is produced. Each request runs on its own thread, which is a virtual thread on JVMs that have them.
+ * Aligned paragraphs are kept in an AlignCache, so paragraphs that are sent again with the same settings are not split again.
+ * The hyphenated and justified modes use the hyphenation patterns the server was started with ('--patterns'), if any.
+ * GET /metrics gives a snapshot of AlignStats, which is measured when the server was started with '--stats'.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class AlignServer {
+
+    /**
+     * Path that alignment jobs are sent to.
+     */
+    public static final String CONTEXT = "/align";
+
+    /**
+     * Path that gives the metrics of the jobs aligned so far.
+     */
+    public static final String METRICS = "/metrics";
+
+    /**
+     * Number of times each mode aligns the warm-up text before the server starts accepting jobs.
+     */
+    public static final int WARM_UP_ROUNDS = 200;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private AlignCache cache;
+    private Hyphenator hyphenator;
+
+    /**
+     * Constructor, binds the server to the loopback address and caches aligned paragraphs in memory.
+     * @param port the port to listen on, 0 picks a free port
+     */
+    AlignServer(int port) throws IOException {
+        this(port, new AlignCache(AlignCache.DEFAULT_MEMORY_SIZE));
+    }
+
+    /**
+     * Constructor, binds the server to the loopback address.
+     * @param port the port to listen on, 0 picks a free port
+     * @param cache the cache shared by all requests
+     */
+    AlignServer(int port, AlignCache cache) throws IOException {
+        this(port, cache, null);
+    }
+
+    /**
+     * Constructor, binds the server to the loopback address.
+     * @param port the port to listen on, 0 picks a free port
+     * @param cache the cache shared by all requests
+     * @param hyphenator the hyphenation patterns used by every job (see Align.setHyphenator), or null for the default hyphenation
+     */
+    AlignServer(int port, AlignCache cache, Hyphenator hyphenator) throws IOException {
+        this.cache = cache;
+        this.hyphenator = hyphenator;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+        server.createContext(METRICS, AlignServer::metrics);
+    }
+
+    /**
+     * Warms up the alignment code and starts accepting jobs.
+     */
+    void start() {
+        warmUp();
+        //The warm-up jobs are not counted in the metrics
+        AlignStats.reset();
+        server.start();
+    }
+
+    /**
+     * Stops accepting jobs and shuts the server down.
+     */
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Getter for the port the server is listening on.
+     * @return port (useful when the server was created with port 0).
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Creates the executor that runs each request on its own thread.
+     * Virtual threads are used when the JVM has them (Java 21 and later), otherwise a pool of reusable daemon threads.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "AlignServer-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Handles one alignment job, see the class comment for the parameters.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String file = query.get("file");
+            int limit;
+            Charset charset;
+            try {
+                limit = Integer.parseInt(query.getOrDefault("limit", ""));
+                charset = Charset.forName(query.getOrDefault("charset", "UTF-8"));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, "limit must be a number and charset must be a known charset");
+                return;
+            }
+            //Some charsets can only be decoded, the aligned text could not be sent back in them
+            if (!charset.canEncode()) {
+                sendError(exchange, 400, "charset must be a charset that text can be encoded in");
+                return;
+            }
+            Align align = AlignText.createAlign(file == null ? "" : file, limit, query.getOrDefault("mode", "L"), hyphenator);
+            if (limit <= 0 || align == null) {
+                sendError(exchange, 400, "usage: " + CONTEXT + "?[file=file_name&]limit=line_length[&mode=align_mode]");
+                return;
+            }
+
+            //The text comes from the file if one was given, otherwise from the body of the request
+            ParagraphSource source;
+            if (file != null) {
+                try {
+                    source = new ReaderParagraphSource(new InputStreamReader(new FileInputStream(file), charset));
+                } catch (FileNotFoundException e) {
+                    sendError(exchange, 404, "File not found: " + e.getMessage());
+                    return;
+                }
+            } else {
+                source = new ReaderParagraphSource(new InputStreamReader(exchange.getRequestBody(), charset));
+            }
+
+            //A response length of 0 means the response is sent in chunks as it is written
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=" + charset.name());
+            exchange.sendResponseHeaders(200, 0);
+            try (source; OutputSink out = new OutputSink(Channels.newChannel(exchange.getResponseBody()), charset)) {
+                String paragraph;
+                while ((paragraph = AlignStats.nextParagraph(source)) != null) {
+                    byte[] lines = cache.renderParagraph(align, paragraph, charset);
+                    out.write(lines, 0, lines.length);
+                }
+            }
+            if (AlignStats.isEnabled()) {
+                //A request body sent in chunks has no length, and is then not counted
+                String length = exchange.getRequestHeaders().getFirst("Content-Length");
+                long bytes = file != null ? new File(file).length() : length == null ? 0 : Long.parseLong(length);
+                AlignStats.count(AlignStats.Counter.BYTES_IN, bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends a snapshot of the metrics as 'name value' lines.
+     */
+    private static void metrics(HttpExchange exchange) throws IOException {
+        byte[] body = AlignStats.snapshot().toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Sends a plain text error response.
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Splits a raw query string into its decoded name=value pairs.
+     */
+    static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Aligns a generated text in every mode (with the server's hyphenation patterns) a number of times so the JIT compiler has optimised the hot paths before the first job arrives.
+     */
+    private void warmUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append(i % 7 == 0 ? "supercalifragilisticexpialidocious" : "word").append(i % 50 == 49 ? "\n" : " ");
+        }
+        String[] paragraphs = text.toString().split("\n");
+        for (String mode : new String[] {"L", "R", "C", "H", "RH", "CH", "J"}) {
+            Align align = AlignText.createAlign("", 40, mode, hyphenator);
+            for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                align.render(paragraphs, 0, paragraphs.length, StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.FlightRecorder;
+
+/**
+ *
+ * Counters and per-stage timings of the alignment hot paths, shared by every thread of the process.
+ * Nothing is measured until setEnabled(true) is called (by '--stats', by the server or by TextAligner.setMetricsEnabled),
+ * so the hot paths only check a flag otherwise. The stages are read (reading and decoding the input), wrap (splitting paragraphs
+ * into lines), pad (adding the alignment's spaces) and write (copying the lines into the output), and their times are added up
+ * over all threads, so with several threads they can add up to more than the time the run took.
+ * The counters can be read at any time as a Snapshot, and while a flight recording is running they are also recorded
+ * every second as a MetricsEvent.
+ *
+ * @author Malak Sadek
+ *
+ */
+public final class AlignStats {
+
+    /**
+     * The stages that time is measured for.
+     */
+    public enum Stage {
+        READ, WRAP, PAD, WRITE
+    }
+
+    /**
+     * The things that are counted.
+     */
+    public enum Counter {
+        PARAGRAPHS, LINES, HYPHENATIONS, LONG_WORDS, BYTES_IN, BYTES_OUT, ALLOCATED_BYTES
+    }
+
+    private static final LongAdder[] TIMES = adders(Stage.values().length);
+    private static final LongAdder[] COUNTS = adders(Counter.values().length);
+
+    /**
+     * Time spent padding and writing lines on each thread, so that it can be taken out of the time of the line breaker that called them.
+     */
+    private static final ThreadLocal<long[]> NESTED = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static volatile boolean enabled;
+    private static boolean registered;
+    private static com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Constructor, the class only has static methods.
+     */
+    private AlignStats() {
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Gets the JVM's thread bean if it can measure the memory allocated by each thread.
+     * @return Returns the bean, or null if allocation cannot be measured.
+     */
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+                ((com.sun.management.ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+                return (com.sun.management.ThreadMXBean) bean;
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            //Allocation is then reported as 0
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether anything is being measured, the hot paths check this before measuring.
+     */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops measuring, what has been measured so far is kept.
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        //The periodic event and the thread bean are only set up once something is measured, so that they are not loaded otherwise
+        if (enabled && !registered) {
+            threads = threads();
+            FlightRecorder.addPeriodicEvent(MetricsEvent.class, () -> {
+                MetricsEvent event = new MetricsEvent();
+                if (AlignStats.enabled && event.shouldCommit()) {
+                    event.set(snapshot());
+                    event.commit();
+                }
+            });
+            registered = true;
+        }
+        AlignStats.enabled = enabled;
+    }
+
+    /**
+     * Sets every counter and time back to zero.
+     */
+    public static void reset() {
+        for (LongAdder adder : TIMES) {
+            adder.reset();
+        }
+        for (LongAdder adder : COUNTS) {
+            adder.reset();
+        }
+    }
+
+    /**
+     * Adds time to a stage.
+     */
+    static void time(Stage stage, long nanos) {
+        TIMES[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * Adds to a counter.
+     */
+    static void count(Counter counter, long amount) {
+        COUNTS[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * Gives the number of bytes the current thread has allocated since it started, used to measure the allocation of a stretch of code.
+     * @return Returns the number of bytes, or 0 if it cannot be measured.
+     */
+    static long allocated() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Adds the time since start to a stage, and the memory allocated since allocated was called to the allocation counter.
+     */
+    static void stage(Stage stage, long start, long allocated) {
+        time(stage, System.nanoTime() - start);
+        count(Counter.ALLOCATED_BYTES, allocated() - allocated);
+    }
+
+    /**
+     * Records the time a line breaker took, without the time its lines spent being padded and written, which is measured separately.
+     * @param start when the line breaker was called
+     * @param nested the padding and writing time of the thread when the line breaker was called, see nested()
+     */
+    static void wrapped(long start, long nested) {
+        time(Stage.WRAP, System.nanoTime() - start - (nested() - nested));
+    }
+
+    /**
+     * Gives the time the current thread has spent padding and writing lines so far.
+     */
+    static long nested() {
+        return NESTED.get()[0];
+    }
+
+    /**
+     * Records the time taken to pad and write a line.
+     */
+    static void line(long pad, long write) {
+        time(Stage.PAD, pad);
+        time(Stage.WRITE, write);
+        NESTED.get()[0] += pad + write;
+    }
+
+    /**
+     * Starts a flight recorder event for a stage, if a recording is running or metrics are enabled.
+     * The event classes are only loaded then, as loading them starts up part of the flight recorder.
+     * @param stage the name of the stage, see StageEvent
+     * @return Returns the event, or null if nothing is recorded.
+     */
+    static StageEvent begin(String stage) {
+        if (!enabled && !FlightRecorder.isInitialized()) {
+            return null;
+        }
+        StageEvent event = new StageEvent(stage);
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends an event started by begin and records it, if it was started.
+     * @param paragraphs the number of paragraphs the stage went through
+     */
+    static void end(StageEvent event, long paragraphs) {
+        if (event != null) {
+            event.paragraphs = paragraphs;
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads the next paragraph from source, adding the time it took to the read stage.
+     */
+    static String nextParagraph(ParagraphSource source) throws IOException {
+        if (!enabled) {
+            return source.nextParagraph();
+        }
+        long start = System.nanoTime();
+        String paragraph = source.nextParagraph();
+        time(Stage.READ, System.nanoTime() - start);
+        return paragraph;
+    }
+
+    /**
+     * Reads the next paragraph from source to be kept (see ParagraphSource.nextParagraphText), adding the time it took to the read stage.
+     */
+    static CharSequence nextParagraphText(ParagraphSource source) throws IOException {
+        if (!enabled) {
+            return source.nextParagraphText();
+        }
+        long start = System.nanoTime();
+        CharSequence paragraph = source.nextParagraphText();
+        time(Stage.READ, System.nanoTime() - start);
+        return paragraph;
+    }
+
+    /**
+     * Reads the next paragraph from source to be kept, or its first window if it is too long (see ParagraphSource.nextBoundedText),
+     * adding the time it took to the read stage.
+     */
+    static CharSequence nextBoundedText(ParagraphSource source) throws IOException {
+        if (!enabled) {
+            return source.nextBoundedText();
+        }
+        long start = System.nanoTime();
+        CharSequence text = source.nextBoundedText();
+        time(Stage.READ, System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * Reads the next paragraph from source as a CharSequence (see ParagraphSource.nextText), adding the time it took to the read stage.
+     */
+    static CharSequence nextText(ParagraphSource source) throws IOException {
+        if (!enabled) {
+            return source.nextText();
+        }
+        long start = System.nanoTime();
+        CharSequence text = source.nextText();
+        time(Stage.READ, System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * Reads more of a paragraph from source (see ParagraphSource.moreText), adding the time it took to the read stage.
+     */
+    static CharSequence moreText(ParagraphSource source, int consumed) throws IOException {
+        if (!enabled) {
+            return source.moreText(consumed);
+        }
+        long start = System.nanoTime();
+        CharSequence text = source.moreText(consumed);
+        time(Stage.READ, System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * Wraps a line sink so that the lines given to it are counted.
+     * @param limit the line length, longer lines are words that did not fit on a line
+     */
+    static LineSink counting(LineSink sink, int limit) {
+        return (text, start, end, hyphen) -> {
+            count(Counter.LINES, 1);
+            if (hyphen) {
+                count(Counter.HYPHENATIONS, 1);
+            } else if (end - start > limit / 2 && DisplayWidth.width(text, start, end) > limit) {
+                count(Counter.LONG_WORDS, 1);
+            }
+            sink.line(text, start, end, hyphen);
+        };
+    }
+
+    /**
+     * Takes a snapshot of the counters and times measured so far.
+     */
+    public static Snapshot snapshot() {
+        long[] times = new long[TIMES.length];
+        long[] counts = new long[COUNTS.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = TIMES[i].sum();
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = COUNTS[i].sum();
+        }
+        return new Snapshot(times, counts);
+    }
+
+    /**
+     * The values of the counters and times at one moment, which do not change afterwards.
+     */
+    public static final class Snapshot {
+
+        private final long[] times;
+        private final long[] counts;
+
+        private Snapshot(long[] times, long[] counts) {
+            this.times = times;
+            this.counts = counts;
+        }
+
+        /**
+         * Gives the total time spent in a stage, over all threads.
+         * @return Returns the time in nanoseconds.
+         */
+        public long nanos(Stage stage) {
+            return times[stage.ordinal()];
+        }
+
+        /**
+         * Gives the value of a counter.
+         */
+        public long count(Counter counter) {
+            return counts[counter.ordinal()];
+        }
+
+        /**
+         * Gives the number of bytes allocated for every megabyte of input.
+         * @return Returns the allocation rate, or 0 if nothing has been read.
+         */
+        public long allocatedPerMegabyte() {
+            long in = count(Counter.BYTES_IN);
+            return in == 0 ? 0 : (long) (count(Counter.ALLOCATED_BYTES) * (double) (1 << 20) / in);
+        }
+
+        /**
+         * Formats the snapshot as one 'name value' pair per line, with the times in milliseconds.
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Stage stage : Stage.values()) {
+                text.append(stage.name().toLowerCase()).append("_ms ").append(nanos(stage) / 1000000).append('\n');
+            }
+            for (Counter counter : Counter.values()) {
+                text.append(counter.name().toLowerCase()).append(' ').append(count(counter)).append('\n');
+            }
+            text.append("allocated_bytes_per_mb ").append(allocatedPerMegabyte()).append('\n');
+            return text.toString();
+        }
+    }
+}
@@ -1,3 +1,13 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
 /**
  *
  * Driver class for the program, contains the main function.
@@ -14,98 +24,676 @@ public class AlignText {
      */
     public static final int NUMBER_OF_ARGUMENTS = 3;
 
+    /**
+     * Files larger than this many bytes are streamed even without '--stream', so that a file that is one huge paragraph is never read into memory whole.
+     */
+    public static final long STREAM_SIZE = 1L << 26;
+
+    /**
+     * Number of lines on a page printed by '--page', unless '--page-size' is given.
+     */
+    public static final int PAGE_SIZE = 50;
+
     /**
      * Main function takes user inputs, validates them, then creates the appropriate object.
-     * @param args - the command line arguments 'file_name line_length [align_mode]'
+     * @param args - the command line arguments 'file_name line_length [align_mode]', optionally preceded or followed by '--stream', '--mmap', '--charset name', '--output file', '--threads N'
+     * '--cache directory [--cache-size megabytes]', '--watch' (which needs '--output file'), '--follow', '--flush policy', '--patterns file'
+     * (hyphenation patterns for the H and J modes) and '--stats' (per-stage times and counters, printed to standard error). A file_name of '-' reads standard input.
+     * line_length and align_mode may be lists separated by commas, then the file is read once and aligned at every combination of them
+     * by a MultiAligner, each into its own file named after '--output file'.
+     * 'java AlignText --serve port' starts an AlignServer instead of aligning a single file.
+     * 'java AlignText --tokenize tokens_file file_name' writes the paragraphs of the file split into words to a tokens file (see TokenFile),
+     * which can then be given as the file_name of any alignment and is read without being decoded or split again.
+     * 'java AlignText --index index_file file_name line_length align_mode' (which may also be lists) indexes the file (see LineIndex),
+     * after which '--index index_file --lines from:to' or '--index index_file --page n' print part of the aligned text without aligning the file up to it.
+     * 'java AlignText --batch output_dir line_length align_mode input...' and 'java AlignText --manifest file' align many files with a BatchAligner.
      */
     public static void main(String[] args) {
 
+        //Options start with "--" and can appear anywhere, everything else is a positional argument
+        ArrayList<String> positional = new ArrayList<>();
+        boolean stream = false;
+        boolean mapped = false;
+        boolean watch = false;
+        boolean follow = false;
+        boolean stats = false;
+        String flush_policy = null;
+        String charset_name = null;
+        String output_name = null;
+        String thread_count = null;
+        String serve_port = null;
+        String batch_dir = null;
+        String manifest = null;
+        String cache_dir = null;
+        String cache_size = null;
+        String patterns_file = null;
+        String tokens_file = null;
+        String index_file = null;
+        String line_range = null;
+        String page = null;
+        String page_size = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--stream")) {
+                stream = true;
+            } else if (arg.equals("--mmap")) {
+                //Memory-mapping only applies to streamed input
+                stream = true;
+                mapped = true;
+            } else if (arg.equals("--follow")) {
+                follow = true;
+            } else if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.equals("--flush") && i + 1 < args.length) {
+                flush_policy = args[++i];
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.equals("--charset") && i + 1 < args.length) {
+                charset_name = args[++i];
+            } else if (arg.equals("--output") && i + 1 < args.length) {
+                output_name = args[++i];
+            } else if (arg.equals("--threads") && i + 1 < args.length) {
+                thread_count = args[++i];
+            } else if (arg.equals("--serve") && i + 1 < args.length) {
+                serve_port = args[++i];
+            } else if (arg.equals("--cache") && i + 1 < args.length) {
+                cache_dir = args[++i];
+            } else if (arg.equals("--cache-size") && i + 1 < args.length) {
+                cache_size = args[++i];
+            } else if (arg.equals("--patterns") && i + 1 < args.length) {
+                patterns_file = args[++i];
+            } else if (arg.equals("--tokenize") && i + 1 < args.length) {
+                tokens_file = args[++i];
+            } else if (arg.equals("--index") && i + 1 < args.length) {
+                index_file = args[++i];
+            } else if (arg.equals("--lines") && i + 1 < args.length) {
+                line_range = args[++i];
+            } else if (arg.equals("--page") && i + 1 < args.length) {
+                page = args[++i];
+            } else if (arg.equals("--page-size") && i + 1 < args.length) {
+                page_size = args[++i];
+            } else if (arg.equals("--batch") && i + 1 < args.length) {
+                batch_dir = args[++i];
+            } else if (arg.equals("--manifest") && i + 1 < args.length) {
+                manifest = args[++i];
+            } else if (arg.startsWith("--")) {
+                //Unknown option
+                System.out.print("usage: java AlignText file_name line_length [align_mode]");
+                System.exit(1);
+            } else {
+                positional.add(arg);
+            }
+        }
+
+        //The stages are timed and counted from the start, and the totals are printed to standard error at the end
+        if (stats) {
+            AlignStats.setEnabled(true);
+        }
+
+        //Aligned output is cached in a directory when one was given
+        AlignCache cache = null;
+        if (cache_dir != null) {
+            try {
+                long disk_limit = cache_size == null ? AlignCache.DEFAULT_DISK_SIZE : Long.parseLong(cache_size) << 20;
+                cache = new AlignCache(AlignCache.DEFAULT_MEMORY_SIZE, Paths.get(cache_dir), disk_limit);
+            } catch (NumberFormatException nfe) {
+                System.out.print("usage: java AlignText --cache directory [--cache-size megabytes]");
+                System.exit(1);
+            } catch (IOException e) {
+                System.out.print("Cannot open cache: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        //Hyphenated alignments use the patterns to choose where words are hyphenated when a pattern file was given
+        Hyphenator hyphenator = null;
+        if (patterns_file != null) {
+            try {
+                hyphenator = Hyphenator.load(patterns_file);
+            } catch (IOException e) {
+                System.out.print("Cannot read patterns: " + e.getMessage());
+                System.exit(1);
+            } catch (IllegalArgumentException iae) {
+                System.out.print(iae.getMessage());
+                System.exit(1);
+            }
+        }
+
+        //Server mode keeps running and aligns the jobs it is sent instead of a single file
+        if (serve_port != null) {
+            try {
+                AlignServer server = new AlignServer(Integer.parseInt(serve_port),
+                        cache == null ? new AlignCache(AlignCache.DEFAULT_MEMORY_SIZE) : cache, hyphenator);
+                server.start();
+                System.out.println("Listening on http://127.0.0.1:" + server.getPort() + AlignServer.CONTEXT);
+                return;
+            } catch (NumberFormatException nfe) {
+                System.out.print("usage: java AlignText --serve port");
+            } catch (IOException e) {
+                System.out.print("Cannot start server: " + e.getMessage());
+            }
+            System.exit(1);
+        }
+
+        //Tokenizing writes the file's paragraphs, split into words, to a tokens file that later runs can align without decoding or splitting it again
+        if (tokens_file != null) {
+            int status = tokenize(positional, tokens_file, charset_name, mapped);
+            printStats(stats);
+            System.exit(status);
+        }
+
+        //Batch mode aligns every input file into its own output file instead of a single file to the output
+        if (batch_dir != null || manifest != null) {
+            int status = batch(positional, batch_dir, manifest, thread_count, charset_name, mapped, cache, hyphenator);
+            printStats(stats);
+            System.exit(status);
+        }
+
         //At least file name and line length should be specified, or else it's invalid
-        if (args.length < 2) {
+        if (positional.size() < 2) {
             System.out.print("usage: java AlignText file_name line_length [align_mode]");
             System.exit(1);
         }
 
         //Default alignment is left
-        String file_name = args[0];
-        String line_length = args[1];
+        String file_name = positional.get(0);
+        String line_length = positional.get(1);
         String alignment = "L";
         int limit;
 
         //If a third argument is supplied, then that becomes the new alignment
-        if (args.length == NUMBER_OF_ARGUMENTS) {
-            alignment = args[2];
+        if (positional.size() == NUMBER_OF_ARGUMENTS) {
+            alignment = positional.get(2);
+        }
+
+        //An index on its own is built for every combination of the line lengths and align modes, for later runs that print part of the file
+        if (index_file != null && line_range == null && page == null) {
+            int status = buildIndex(file_name, line_length.split(",", -1), alignment.split(",", -1), index_file, charset_name, hyphenator);
+            printStats(stats);
+            System.exit(status);
+        }
+
+        //Several line lengths or align modes separated by commas align the file at every combination of them in a single pass
+        if (line_length.contains(",") || alignment.contains(",")) {
+            if (watch || follow || cache != null || line_range != null || page != null) {
+                System.out.print("usage: java AlignText --output file file_name line_length,... [align_mode,...]");
+                System.exit(1);
+            }
+            int status = layouts(file_name, line_length.split(",", -1), alignment.split(",", -1), output_name, thread_count,
+                    charset_name, mapped, hyphenator);
+            printStats(stats);
+            System.exit(status);
         }
 
         //Checks whether the value entered for line length is a number
         //Try-catch block with exceptions obtained from: https://www.baeldung.com/java-check-string-number
         try {
             limit = Integer.parseInt(line_length);
+            int threads = thread_count == null ? 1 : Integer.parseInt(thread_count);
 
-            //Checks whether the value entered for line length is positive
-            if (limit <= 0) {
+            //Checks whether the values entered for line length and number of threads are positive
+            if (limit <= 0 || threads <= 0) {
                 System.out.print("usage: java AlignText file_name line_length [align_mode]");
                 System.exit(1);
             }
 
             //The following part creates the appropriate object based on the supplied alignment
+            Align align = createAlign(file_name, limit, alignment);
+            if (align == null) {
+                //If the alignment supplied is invalid
+                System.out.print("usage: java AlignText file_name line_length [align_mode]");
+                System.exit(1);
+            }
 
-            //If hyphening is involved, the default is left hyphening, however the user might choose right or centered hyphening by inputting 2 characters as shown
-            if (alignment.contains("H")) {
-                HyphenateAlign hyphenate = new HyphenateAlign(file_name, limit);
-                switch(alignment) {
-                    case "CH":
-                    case "HC":
-                        hyphenate.setAlignment("C");
-                        break;
-                    case "RH":
-                    case "HR":
-                        hyphenate.setAlignment("R");
-                        break;
-                    case "LH":
-                    case "HL":
-                    case "H":
-                        hyphenate.setAlignment("L");
-                        break;
-                    default:
-                        //If the alignment supplied is invalid
-                        System.out.print("usage: java AlignText file_name line_length [align_mode]");
-                        System.exit(1);
+            //The file is decoded with the platform default charset unless another one was given
+            if (charset_name != null) {
+                align.setCharset(Charset.forName(charset_name));
+            }
+            align.setMapped(mapped);
+            align.setHyphenator(hyphenator);
+
+            //Large files give the same output streamed, without holding the whole file in memory (through the pipeline with several threads)
+            if (!stream && new File(file_name).length() > STREAM_SIZE) {
+                stream = true;
+            }
+
+            //Tokens files are streamed, so their paragraphs are aligned as the Tokens they are read as instead of being copied into Strings
+            if (!stream && !watch && TokenFile.isTokenFile(file_name)) {
+                stream = true;
+            }
+
+            //Live input ("-" for standard input, or a followed file) is always streamed on one thread so every paragraph is printed as soon as it arrives
+            align.setFollow(follow);
+            if (align.isLive() && !watch) {
+                stream = true;
+                threads = 1;
+            }
+            if (flush_policy != null) {
+                align.setFlushMillis(flushMillis(flush_policy));
+            }
+
+            //Printing a range of lines only splits the paragraphs the lines are in, and with an index only those since the checkpoint before them
+            if (line_range != null || page != null) {
+                long[] range = lineRange(line_range, page, page_size);
+                if (watch || follow) {
+                    System.out.print("usage: java AlignText [--index index_file] --lines from:to|--page n file_name line_length [align_mode]");
+                    System.exit(1);
+                }
+                LineIndex index = null;
+                if (index_file != null) {
+                    index = loadIndex(align, index_file);
+                }
+                if (output_name != null) {
+                    align.setOutput(OutputSink.toFile(output_name, align.getCharset()));
                 }
+                align.printLines(index, range[0], range[1]);
+                align.getOutput().close();
+                printStats(stats);
+                System.exit(0);
+            }
 
-                hyphenate.print(hyphenate.splitString(hyphenate.readFile()));
+            //Watch mode keeps the output file up to date with the file until it is stopped
+            if (watch) {
+                if (output_name == null) {
+                    System.out.print("usage: java AlignText --watch --output file file_name line_length [align_mode]");
+                    System.exit(1);
+                }
+                if (!Files.isRegularFile(Paths.get(file_name))) {
+                    System.out.print("File not found: " + file_name);
+                    System.exit(1);
+                }
+                new WatchAligner(align, output_name).watch();
+            }
 
-            //Other alignments
-            } else {
-                switch(alignment) {
-                    case "L":
-                        LeftAlign left = new LeftAlign(file_name, limit);
-                        left.print(left.splitString(left.readFile()));
-                        break;
-                    case "R":
-                        RightAlign right = new RightAlign(file_name, limit);
-                        right.print(right.splitString(right.readFile()));
-                        break;
-                    case "C":
-                        CenterAlign center = new CenterAlign(file_name, limit);
-                        center.print(center.splitString(center.readFile()));
-                        break;
-                    default:
-                        //If the alignment supplied is invalid
+            //The aligned text is written to standard output unless an output file was given
+            if (output_name != null) {
+                align.setOutput(OutputSink.toFile(output_name, align.getCharset()));
+            }
+
+            //Streaming reads, splits and prints one paragraph at a time, otherwise the whole file is read before anything is printed
+            //With more than one thread the paragraphs are aligned in parallel chunks and printed in their original order,
+            //when streaming this is done by a pipeline that reads, aligns and writes at the same time
+            //With a cache, repeated files and paragraphs are not split again, and streamed files are streamed through the cache
+            //Live input can only be read once, so it is not cached
+            if (cache != null && !stream) {
+                OutputSink out = align.getOutput();
+                byte[] result = cache.render(align, align.readFile(), out.getCharset());
+                out.write(result, 0, result.length);
+                out.flush();
+                System.err.println(cache.stats());
+            } else if (cache != null && !align.isLive()) {
+                try {
+                    if (!cache.stream(align, align.getOutput())) {
                         System.out.print("usage: java AlignText file_name line_length [align_mode]");
                         System.exit(1);
+                    }
+                } catch (FileNotFoundException e) {
+                    System.out.println("File not found: " + e.getMessage());
+                } catch (IOException e) {
+                    System.out.println("I/O Ooops: " + e.getMessage());
                 }
+                System.err.println(cache.stats());
+            } else if (stream && threads > 1) {
+                new AlignPipeline(align, threads).run();
+            } else if (stream) {
+                align.stream();
+            } else if (threads > 1) {
+                ParallelAligner parallel = new ParallelAligner(align, threads);
+                parallel.print(align.readFile());
+                parallel.shutdown();
+            } else {
+                align.print(align.splitString(align.readFile()));
             }
+            align.getOutput().close();
+            printStats(stats);
 
+        } catch (IOException e) {
+            System.out.print("Cannot write output: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            //Watching was stopped
+            System.exit(0);
         } catch (NumberFormatException nfe) {
             System.out.print("usage: java AlignText file_name line_length [align_mode]");
             System.exit(1);
-        } catch (NullPointerException np) {
-            //Thrown if a program tries to use padding with left or hyphenated alignment (which is not allowed)
-            System.out.print(np.getMessage());
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ce) {
+            System.out.print("Unknown charset: " + ce.getMessage());
             System.exit(1);
         }
 
         System.exit(0);
     }
+
+    /**
+     * Prints the metrics measured during the run to standard error, if '--stats' was given.
+     */
+    static void printStats(boolean stats) {
+        if (stats) {
+            System.err.print(AlignStats.snapshot());
+        }
+    }
+
+    /**
+     * Converts a '--flush' policy to the interval used by Align.setFlushMillis.
+     * @param policy 'idle' (flush when waiting for input), 'paragraph' (flush after every paragraph) or a number of milliseconds
+     * @throws NumberFormatException if the policy is not valid
+     */
+    static long flushMillis(String policy) {
+        switch (policy) {
+            case "idle":
+                return Align.FLUSH_IDLE;
+            case "paragraph":
+                return 0;
+            default:
+                long millis = Long.parseLong(policy);
+                if (millis < 0) {
+                    throw new NumberFormatException(policy);
+                }
+                return millis;
+        }
+    }
+
+    /**
+     * Aligns a file at every combination of the given line lengths and align modes with a MultiAligner, reading the file only once.
+     * Each layout is written to its own file, named after output_name followed by the line length and align mode (e.g. out.txt.80.C).
+     * @return Returns the exit status, 1 if the arguments were invalid or the file could not be read.
+     */
+    static int layouts(String file_name, String[] line_lengths, String[] modes, String output_name, String thread_count,
+                       String charset_name, boolean mapped, Hyphenator hyphenator) {
+        String usage = "usage: java AlignText --output file file_name line_length,... [align_mode,...]";
+        ArrayList<Align> aligns = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        try {
+            //The layouts are aligned in parallel, on one thread each unless a number of threads was given
+            int threads = thread_count == null ? Math.min(line_lengths.length * modes.length, Runtime.getRuntime().availableProcessors())
+                    : Integer.parseInt(thread_count);
+            if (output_name == null || threads <= 0) {
+                System.out.print(usage);
+                return 1;
+            }
+            Charset charset = charset_name == null ? Charset.defaultCharset() : Charset.forName(charset_name);
+            for (String line_length : line_lengths) {
+                int limit = Integer.parseInt(line_length);
+                for (String mode : modes) {
+                    Align align = limit <= 0 ? null : createAlign(file_name, limit, mode);
+                    if (align == null) {
+                        System.out.print(usage);
+                        return 1;
+                    }
+                    align.setCharset(charset);
+                    align.setMapped(mapped);
+                    align.setHyphenator(hyphenator);
+                    aligns.add(align);
+                    names.add(output_name + "." + limit + "." + mode);
+                }
+            }
+            for (int i = 0; i < aligns.size(); i++) {
+                try {
+                    aligns.get(i).setOutput(OutputSink.toFile(names.get(i), aligns.get(i).getCharset()));
+                } catch (IOException e) {
+                    System.out.print("Cannot write output: " + e.getMessage());
+                    return 1;
+                }
+            }
+            new MultiAligner(aligns.toArray(new Align[0]), threads).run();
+            for (Align align : aligns) {
+                align.getOutput().close();
+            }
+            return 0;
+        } catch (NumberFormatException nfe) {
+            System.out.print(usage);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ce) {
+            System.out.print("Unknown charset: " + ce.getMessage());
+        } catch (IOException e) {
+            System.out.print("I/O Ooops: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    /**
+     * Converts '--lines from:to' (counting from 1 and including line to, or up to the end if to is left out) or '--page n' (counting from 1)
+     * to the range of lines used by Align.printLines, which counts from 0 and leaves out the line at its end.
+     * @throws NumberFormatException if the range is not valid, or both were given
+     */
+    static long[] lineRange(String lines, String page, String page_size) {
+        if (lines != null && page == null) {
+            int colon = lines.indexOf(':');
+            if (colon < 0) {
+                throw new NumberFormatException(lines);
+            }
+            long from = Long.parseLong(lines.substring(0, colon));
+            long to = colon == lines.length() - 1 ? Long.MAX_VALUE : Long.parseLong(lines.substring(colon + 1));
+            if (from < 1 || to < from) {
+                throw new NumberFormatException(lines);
+            }
+            return new long[] {from - 1, to};
+        }
+        long number = Long.parseLong(page);
+        long size = page_size == null ? PAGE_SIZE : Long.parseLong(page_size);
+        if (lines != null || number < 1 || size < 1 || number > Long.MAX_VALUE / size) {
+            throw new NumberFormatException(page);
+        }
+        return new long[] {(number - 1) * size, number * size};
+    }
+
+    /**
+     * Reads the index of the alignment's file, building it first if it is missing or out of date, or does not have the alignment's layout.
+     * Exits if the file cannot be indexed.
+     */
+    static LineIndex loadIndex(Align align, String index_file) {
+        String file_name = align.getFileName();
+        if (align.isLive()) {
+            System.out.print("usage: java AlignText --index index_file --lines from:to file_name line_length [align_mode]");
+            System.exit(1);
+        }
+        if (!Files.isRegularFile(Paths.get(file_name))) {
+            System.out.print("File not found: " + file_name);
+            System.exit(1);
+        }
+        if (!LineIndex.isSupported(file_name, align.getCharset())) {
+            System.out.print("Cannot index a file in " + align.getCharset().name());
+            System.exit(1);
+        }
+        //Checkpoints are found in the mapped bytes of the file
+        align.setMapped(true);
+        try {
+            return LineIndex.load(index_file, align);
+        } catch (IOException e) {
+            System.out.print("I/O Ooops: " + e.getMessage());
+            System.exit(1);
+        }
+        return null;
+    }
+
+    /**
+     * Indexes a file for every combination of the given line lengths and align modes in one pass and writes the index (see LineIndex),
+     * then prints the number of lines of each layout.
+     * @return Returns the exit status, 1 if the arguments were invalid or a file could not be read or written.
+     */
+    static int buildIndex(String file_name, String[] line_lengths, String[] modes, String index_file, String charset_name,
+                          Hyphenator hyphenator) {
+        String usage = "usage: java AlignText --index index_file file_name line_length,... [align_mode,...]";
+        try {
+            Charset charset = charset_name == null ? Charset.defaultCharset() : Charset.forName(charset_name);
+            if (!Files.isRegularFile(Paths.get(file_name))) {
+                System.out.print("File not found: " + file_name);
+                return 1;
+            }
+            if (!LineIndex.isSupported(file_name, charset)) {
+                System.out.print("Cannot index a file in " + charset.name());
+                return 1;
+            }
+            ArrayList<Align> aligns = new ArrayList<>();
+            for (String line_length : line_lengths) {
+                int limit = Integer.parseInt(line_length);
+                for (String mode : modes) {
+                    Align align = limit <= 0 ? null : createAlign(file_name, limit, mode);
+                    if (align == null) {
+                        System.out.print(usage);
+                        return 1;
+                    }
+                    align.setCharset(charset);
+                    align.setMapped(true);
+                    align.setHyphenator(hyphenator);
+                    aligns.add(align);
+                }
+            }
+            LineIndex index = LineIndex.build(aligns.toArray(new Align[0]));
+            index.write(index_file);
+            //The number of lines tells a viewer how many pages each layout has
+            for (int j = 0; j < aligns.size(); j++) {
+                System.out.println(index.getLayouts().get(j) + " " + index.lineCount(j) + " lines");
+            }
+            return 0;
+        } catch (NumberFormatException nfe) {
+            System.out.print(usage);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ce) {
+            System.out.print("Unknown charset: " + ce.getMessage());
+        } catch (IOException e) {
+            System.out.print("I/O Ooops: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    /**
+     * Splits the paragraphs of the file given as the only positional argument into words and writes them to a tokens file.
+     * @return Returns the exit status, 1 if the arguments were invalid or a file could not be read or written.
+     */
+    static int tokenize(ArrayList<String> positional, String tokens_file, String charset_name, boolean mapped) {
+        if (positional.size() != 1) {
+            System.out.print("usage: java AlignText --tokenize tokens_file file_name");
+            return 1;
+        }
+        String file_name = positional.get(0);
+        if (!Files.isRegularFile(Paths.get(file_name))) {
+            System.out.print("File not found: " + file_name);
+            return 1;
+        }
+        try {
+            Charset charset = charset_name == null ? Charset.defaultCharset() : Charset.forName(charset_name);
+            try (ParagraphSource source = mapped ? FileUtil.mapParagraphs(file_name, charset) : FileUtil.openParagraphs(file_name, charset)) {
+                TokenFile.write(source, tokens_file);
+            }
+            return 0;
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ce) {
+            System.out.print("Unknown charset: " + ce.getMessage());
+        } catch (IOException e) {
+            System.out.print("I/O Ooops: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    /**
+     * Aligns the files of a batch, which are either listed in a manifest or given as 'line_length align_mode input...' with an output directory.
+     * @return Returns the exit status, 1 if the arguments were invalid or any file could not be aligned.
+     */
+    static int batch(ArrayList<String> positional, String batch_dir, String manifest, String thread_count, String charset_name,
+                     boolean mapped, AlignCache cache, Hyphenator hyphenator) {
+        String usage = "usage: java AlignText --batch output_dir line_length align_mode input... | java AlignText --manifest file";
+        try {
+            //Batches use every core unless a number of threads was given
+            int threads = thread_count == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(thread_count);
+            Charset charset = charset_name == null ? Charset.defaultCharset() : Charset.forName(charset_name);
+            ArrayList<BatchAligner.Job> jobs;
+            if (threads <= 0) {
+                System.out.print(usage);
+                return 1;
+            }
+            if (manifest != null) {
+                if (batch_dir != null || !positional.isEmpty()) {
+                    System.out.print(usage);
+                    return 1;
+                }
+                jobs = BatchAligner.fromManifest(manifest);
+            } else {
+                int limit = positional.size() < NUMBER_OF_ARGUMENTS ? 0 : Integer.parseInt(positional.get(0));
+                if (limit <= 0) {
+                    System.out.print(usage);
+                    return 1;
+                }
+                jobs = BatchAligner.fromInputs(positional.subList(2, positional.size()), batch_dir, limit, positional.get(1));
+            }
+
+            BatchAligner batch = new BatchAligner(threads, charset);
+            batch.setCache(cache);
+            batch.setHyphenator(hyphenator);
+            batch.setMapped(mapped);
+            int failures = batch.run(jobs);
+            batch.shutdown();
+            if (cache != null) {
+                System.err.println(cache.stats());
+            }
+            return failures == 0 ? 0 : 1;
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ce) {
+            System.out.print("Unknown charset: " + ce.getMessage());
+        } catch (NumberFormatException nfe) {
+            System.out.print(usage);
+        } catch (IllegalArgumentException iae) {
+            //An invalid align mode or manifest line
+            System.out.print(iae.getMessage());
+        } catch (IOException e) {
+            System.out.print("Cannot read batch: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    /**
+     * Creates the alignment object for an align_mode the same way, and gives it hyphenation patterns (see Align.setHyphenator).
+     * @param hyphenator the patterns used by the hyphenated and justified modes, or null for the default hyphenation
+     * @return Returns the alignment object, or null if the align_mode is not valid.
+     */
+    static Align createAlign(String file_name, int limit, String alignment, Hyphenator hyphenator) {
+        Align align = createAlign(file_name, limit, alignment);
+        if (align != null) {
+            align.setHyphenator(hyphenator);
+        }
+        return align;
+    }
+
+    /**
+     * Creates the appropriate alignment object based on the supplied alignment.
+     * @param file_name the file path and name given to the object
+     * @param limit the line length
+     * @param alignment one of the align_mode values (L, R, C, J, or H optionally combined with L, R or C in either order)
+     * @return Returns the alignment object, or null if the alignment supplied is invalid.
+     */
+    static Align createAlign(String file_name, int limit, String alignment) {
+
+        //If hyphening is involved, the default is left hyphening, however the user might choose right or centered hyphening by inputting 2 characters as shown
+        if (alignment.contains("H")) {
+            HyphenateAlign hyphenate = new HyphenateAlign(file_name, limit);
+            switch(alignment) {
+                case "CH":
+                case "HC":
+                    hyphenate.setAlignment("C");
+                    break;
+                case "RH":
+                case "HR":
+                    hyphenate.setAlignment("R");
+                    break;
+                case "LH":
+                case "HL":
+                case "H":
+                    hyphenate.setAlignment("L");
+                    break;
+                default:
+                    return null;
+            }
+            return hyphenate;
+        }
+
+        //Other alignments
+        switch(alignment) {
+            case "L":
+                return new LeftAlign(file_name, limit);
+            case "R":
+                return new RightAlign(file_name, limit);
+            case "C":
+                return new CenterAlign(file_name, limit);
+            case "J":
+                return new JustifyAlign(file_name, limit);
+            default:
+                return null;
+        }
+    }
 }
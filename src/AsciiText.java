@@ -0,0 +1,93 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * A CharSequence view over a range of bytes that are all ASCII, so every byte is exactly one character.
+ * It lets the line breakers and the output sink work directly on the input bytes without decoding them into a String,
+ * and the same instance can be pointed at a new range for every paragraph so no objects are created per paragraph.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class AsciiText implements CharSequence {
+
+    private ByteBuffer bytes;
+    private int offset;
+    private int length;
+
+    /**
+     * Constructor for an empty view, set has to be called before it is used.
+     */
+    AsciiText() {
+        this(ByteBuffer.allocate(0), 0, 0);
+    }
+
+    /**
+     * Constructor.
+     * @param bytes the buffer holding the text, only bytes below 0x80 may be viewed
+     * @param offset index in bytes of the first character
+     * @param length number of characters
+     */
+    AsciiText(ByteBuffer bytes, int offset, int length) {
+        set(bytes, offset, length);
+    }
+
+    /**
+     * Points the view at a new range of bytes.
+     */
+    void set(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes.get(offset + index);
+    }
+
+    /**
+     * Returns a view over part of this text, the bytes are not copied.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new AsciiText(bytes, offset + start, end - start);
+    }
+
+    /**
+     * Finds the index of the first occurrence of an ASCII character, starting the search at from.
+     * @return Returns the index of the character, or -1 if it does not occur after from.
+     */
+    int indexOf(char c, int from) {
+        byte b = (byte) c;
+        for (int i = offset + Math.max(from, 0), end = offset + length; i < end; i++) {
+            if (bytes.get(i) == b) {
+                return i - offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the characters from start to end as bytes into target, starting at index target_offset.
+     */
+    void copyTo(byte[] target, int target_offset, int start, int end) {
+        bytes.get(offset + start, target, target_offset, end - start);
+    }
+
+    /**
+     * Copies the viewed bytes into a String.
+     */
+    @Override
+    public String toString() {
+        byte[] copy = new byte[length];
+        bytes.get(offset, copy);
+        return new String(copy, StandardCharsets.US_ASCII);
+    }
+}
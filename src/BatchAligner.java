@@ -0,0 +1,307 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ *
+ * Aligns many files in one run, each into its own output file. The jobs come either from a list of files and directories,
+ * which are walked recursively and mirrored under an output directory, or from a manifest that gives the input, output,
+ * line length and alignment of every file. The files are aligned on a work-stealing ForkJoinPool, and files larger than
+ * SPLIT_SIZE are split into paragraph chunks that idle threads can steal, so one huge file does not hold up the others.
+ * Every file is read one batch of paragraphs at a time instead of all at once, so large files do not have to fit in memory.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class BatchAligner {
+
+    /**
+     * Files with more characters than this are split into chunks of ParallelAligner.CHUNK_SIZE characters.
+     */
+    public static final int SPLIT_SIZE = 4 * ParallelAligner.CHUNK_SIZE;
+
+    private ForkJoinPool pool;
+    private Charset charset;
+    private AtomicInteger failures = new AtomicInteger();
+    private AlignCache cache;
+    private Hyphenator hyphenator;
+    private boolean mapped;
+
+    /**
+     * Constructor.
+     * @param threads number of threads to align with
+     * @param charset the charset the input files are encoded with
+     */
+    BatchAligner(int threads, Charset charset) {
+        this.pool = new ForkJoinPool(threads);
+        this.charset = charset;
+    }
+
+    /**
+     * Setter for the cache, when it is set every file is aligned through it instead of being split into chunks.
+     */
+    void setCache(AlignCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Setter for the hyphenation patterns, they are used by every job with a hyphenated or justified alignment.
+     */
+    void setHyphenator(Hyphenator hyphenator) {
+        this.hyphenator = hyphenator;
+    }
+
+    /**
+     * Setter for whether the files are read through a memory-mapped reader (see MappedParagraphSource), as with '--mmap'.
+     */
+    void setMapped(boolean mapped) {
+        this.mapped = mapped;
+    }
+
+    /**
+     * A single file to align, the alignment object holds the input file, line length and alignment.
+     */
+    static class Job {
+
+        private Align align;
+        private Path output;
+
+        /**
+         * Constructor.
+         * @param align the alignment object for the input file
+         * @param output where the aligned text is written
+         */
+        Job(Align align, Path output) {
+            this.align = align;
+            this.output = output;
+        }
+    }
+
+    /**
+     * Creates a job for every file given, directories are walked recursively and their files are mirrored under output_dir,
+     * while files given directly are written to output_dir under their own name.
+     * @param inputs files and directories to align
+     * @param output_dir the directory the aligned files are written to
+     * @param limit the line length
+     * @param alignment one of the align_mode values
+     * @throws IllegalArgumentException if the alignment is invalid
+     * @throws IOException if a directory cannot be walked
+     */
+    static ArrayList<Job> fromInputs(List<String> inputs, String output_dir, int limit, String alignment) throws IOException {
+        if (AlignText.createAlign("", limit, alignment) == null) {
+            throw new IllegalArgumentException("Invalid align_mode: " + alignment);
+        }
+        Path out = Paths.get(output_dir);
+        ArrayList<Job> jobs = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                //Sorted so the jobs are always created in the same order
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    jobs.add(new Job(AlignText.createAlign(file.toString(), limit, alignment), out.resolve(path.relativize(file))));
+                }
+            } else {
+                jobs.add(new Job(AlignText.createAlign(input, limit, alignment), out.resolve(path.getFileName())));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Creates a job for every line of a manifest. Each line holds 'input output line_length [align_mode]' separated by
+     * whitespace, blank lines and lines starting with '#' are skipped.
+     * @param manifest the manifest file
+     * @throws IllegalArgumentException if a line of the manifest is invalid
+     * @throws IOException if the manifest cannot be read
+     */
+    static ArrayList<Job> fromManifest(String manifest) throws IOException {
+        ArrayList<Job> jobs = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(manifest), Charset.defaultCharset())) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                Align align = null;
+                if (fields.length == 3 || fields.length == 4) {
+                    try {
+                        int limit = Integer.parseInt(fields[2]);
+                        if (limit > 0) {
+                            align = AlignText.createAlign(fields[0], limit, fields.length == 4 ? fields[3] : "L");
+                        }
+                    } catch (NumberFormatException nfe) {
+                        //Reported below
+                    }
+                }
+                if (align == null) {
+                    throw new IllegalArgumentException("Invalid manifest line " + number + ": " + line);
+                }
+                jobs.add(new Job(align, Paths.get(fields[1])));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Aligns every job on the pool. A file that cannot be read or written is reported and the other files are still aligned.
+     * @return Returns the number of files that could not be aligned.
+     */
+    int run(List<Job> jobs) {
+        if (!jobs.isEmpty()) {
+            pool.invoke(new BatchTask(jobs, 0, jobs.size()));
+        }
+        return failures.get();
+    }
+
+    /**
+     * Stops the pool's threads once they are no longer needed.
+     */
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Aligns a single file and writes it to the job's output, large files are split into chunks that are aligned in parallel.
+     * The file is read through a ParagraphSource (memory-mapped if mapped is set) a batch of SPLIT_SIZE characters at a time,
+     * the same as a streamed file. A paragraph too long for the source's window is split one window at a time straight into the output,
+     * so memory grows with neither the size of the file nor the length of its paragraphs.
+     */
+    private void align(Job job) throws IOException {
+        Align align = job.align;
+        align.setCharset(charset);
+        align.setMapped(mapped);
+        if (hyphenator != null) {
+            align.setHyphenator(hyphenator);
+        }
+
+        Path parent = job.output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputSink out = OutputSink.toFile(job.output.toString(), charset)) {
+            if (cache != null) {
+                cache.stream(align, out);
+                return;
+            }
+            try (ParagraphSource source = align.openSource()) {
+                ArrayList<CharSequence> batch = new ArrayList<>();
+                int size = 0;
+                boolean first = true;
+                CharSequence paragraph = AlignStats.nextBoundedText(source);
+                while (paragraph != null) {
+                    if (!source.isComplete()) {
+                        write(align, batch, true, out);
+                        size = 0;
+                        first = false;
+                        align.writeParagraph(source, paragraph, out);
+                        paragraph = AlignStats.nextBoundedText(source);
+                        continue;
+                    }
+                    batch.add(paragraph);
+                    //Each paragraph also ends with a new line
+                    size += paragraph.length() + 1;
+                    paragraph = AlignStats.nextBoundedText(source);
+                    if (size >= SPLIT_SIZE || paragraph == null) {
+                        //Small files are aligned by the thread that picked them up, the chunks of large files are forked so other threads can steal them
+                        write(align, batch, !first || paragraph != null, out);
+                        size = 0;
+                        first = false;
+                    }
+                }
+            }
+        } catch (UncheckedIOException e) {
+            //The sink reports write errors unchecked
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Aligns a batch of paragraphs in chunks, writes them to out in order and empties the batch.
+     * @param fork whether the chunks are forked so that other threads can steal them, or aligned by the current thread
+     */
+    private static void write(Align align, ArrayList<CharSequence> batch, boolean fork, OutputSink out) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        CharSequence[] paragraphs = batch.toArray(new CharSequence[0]);
+        batch.clear();
+        int[] bounds = ParallelAligner.chunk(paragraphs);
+        byte[][] results = new byte[bounds.length - 1][];
+        if (fork) {
+            new ParallelAligner.AlignTask(align, paragraphs, bounds, results, out.getCharset(), 0, results.length).invoke();
+        } else {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = align.render(paragraphs, bounds[i], bounds[i + 1], out.getCharset());
+            }
+        }
+        for (byte[] result : results) {
+            out.write(result, 0, result.length);
+        }
+    }
+
+    /**
+     * Fork-join task that aligns a range of jobs, it keeps dividing the range in half until it is left with a single file.
+     */
+    private class BatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient List<Job> jobs;
+        private int from;
+        private int to;
+
+        /**
+         * Constructor, the task aligns the jobs from index from up to to.
+         */
+        BatchTask(List<Job> jobs, int from, int to) {
+            this.jobs = jobs;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Aligns a single file, or forks two tasks that each align half of the range.
+         */
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                Job job = jobs.get(from);
+                //A failed file is reported and the other files are still aligned
+                try {
+                    align(job);
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                    System.out.println("Cannot align " + job.align.getFileName() + ": " + e.getMessage());
+                } catch (UncheckedIOException e) {
+                    failures.incrementAndGet();
+                    System.out.println("Cannot align " + job.align.getFileName() + ": " + e.getCause().getMessage());
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                    System.out.println("Cannot align " + job.align.getFileName() + ": " + e);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(jobs, from, middle), new BatchTask(jobs, middle, to));
+            }
+        }
+    }
+}
@@ -1,4 +1,3 @@
-import java.util.ArrayList;
 /**
  *
  * Specialized alignment class for center alignment, it inherits from the general alignment abstract class.
@@ -16,39 +15,43 @@ public class CenterAlign extends Align {
     }
 
     /**
-     * CenterAlign's implementation of the abstract print method.
-     * @param lines contains the lines of text that have been split according to the line length
-     * padSpaces is called before printing to create the center alignment
+     * CenterAlign's implementation of the abstract spacesBefore method.
+     * @return Returns the same number of spaces that padSpaces adds before the line (half of the remaining spaces, rounded up)
      */
-    void print(ArrayList<String> lines) {
-        for (String line : lines) {
-            System.out.print(padSpaces(line) + "\n");
-        }
+    @Override
+    int spacesBefore(int length) {
+        return (Math.max(0, this.getLimit() - length) + 1) / 2;
+    }
+
+    /**
+     * Gives the number of spaces after the line to create the center alignment.
+     * @return Returns the same number of spaces that padSpaces adds after the line (half of the remaining spaces, rounded down)
+     */
+    @Override
+    int spacesAfter(int length) {
+        return Math.max(0, this.getLimit() - length) / 2;
     }
 
     /**
      * Pads the lines with spaces to create a center alignment effect.
      * @param line contains a line of text that has been split according to the line length
      * @return Returns the same line after it has been padded to create center alignment
-     * The floor and ciel methods in Math were found on: https://www.javacodex.com/Math-Examples/Floor-and-Ceiling-Example
      */
     @Override
     String padSpaces(String line) {
-        String line_out = "";
 
-        //Calculates the remaining spaces between the maximum line length and current line length and divides it by 2
-        double spaces = (this.getLimit() - line.length()) / 2.0;
+        //Calculates the remaining spaces between the maximum line length and current line length
+        int spaces = Math.max(0, this.getLimit() - DisplayWidth.width(line));
 
-        //If there are an odd number of spaces, we add the extra space to the beginning of the text by rounding up using ceil
-        String before = " ".repeat((int) Math.max(0, Math.ceil(spaces)));
-        //We then add the other half to the end of the text by rounding down using floor
-        String after = " ".repeat((int) Math.max(0, Math.floor(spaces)));
-
-        //line_out is then created with the left spaces, text, then right spaces
-        line_out = line_out + before;
-        line_out = line_out + line;
-        line_out = line_out + after;
+        //If there are an odd number of spaces, the extra space goes at the beginning of the text (rounding up), and the other half at the end (rounding down)
+        return " ".repeat((spaces + 1) / 2) + line + " ".repeat(spaces / 2);
+    }
 
-        return line_out;
+    /**
+     * CenterAlign's implementation of the abstract getMode method.
+     */
+    @Override
+    String getMode() {
+        return "C";
     }
 }
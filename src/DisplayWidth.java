@@ -0,0 +1,292 @@
+import java.nio.CharBuffer;
+
+/**
+ *
+ * Measures how many columns text takes up on a terminal, which is what the line length is counted in.
+ * Most characters take up one column, East Asian wide and fullwidth characters and emoji take up two, and combining marks
+ * and other format characters take up none. Characters are measured in grapheme clusters (what is seen as a single character),
+ * so a letter with its combining accents, an emoji with its skin tone or joined to other emoji with zero width joiners, and a pair of
+ * regional indicators (a flag) are never split and are counted once. The widths of the Basic Multilingual Plane are looked up in a
+ * table built when the class is loaded, and ASCII text, where every character is one column, is detected first and never looked up.
+ *
+ * @author Malak Sadek
+ *
+ */
+public final class DisplayWidth {
+
+    /**
+     * Ranges of East Asian wide and fullwidth characters and emoji that take up two columns, as pairs of first and last code point.
+     */
+    private static final int[] WIDE = {
+        0x1100, 0x115F, 0x231A, 0x231B, 0x2329, 0x232A, 0x23E9, 0x23EC, 0x23F0, 0x23F0, 0x23F3, 0x23F3,
+        0x25FD, 0x25FE, 0x2614, 0x2615, 0x2648, 0x2653, 0x267F, 0x267F, 0x2693, 0x2693, 0x26A1, 0x26A1,
+        0x26AA, 0x26AB, 0x26BD, 0x26BE, 0x26C4, 0x26C5, 0x26CE, 0x26CE, 0x26D4, 0x26D4, 0x26EA, 0x26EA,
+        0x26F2, 0x26F3, 0x26F5, 0x26F5, 0x26FA, 0x26FA, 0x26FD, 0x26FD, 0x2705, 0x2705, 0x270A, 0x270B,
+        0x2728, 0x2728, 0x274C, 0x274C, 0x274E, 0x274E, 0x2753, 0x2755, 0x2757, 0x2757, 0x2795, 0x2797,
+        0x27B0, 0x27B0, 0x27BF, 0x27BF, 0x2B1B, 0x2B1C, 0x2B50, 0x2B50, 0x2B55, 0x2B55, 0x2E80, 0x303E,
+        0x3041, 0x33FF, 0x3400, 0x4DBF, 0x4E00, 0x9FFF, 0xA000, 0xA4CF, 0xA960, 0xA97F, 0xAC00, 0xD7A3,
+        0xF900, 0xFAFF, 0xFE10, 0xFE19, 0xFE30, 0xFE6F, 0xFF00, 0xFF60, 0xFFE0, 0xFFE6,
+        0x16FE0, 0x16FE4, 0x17000, 0x18AFF, 0x1B000, 0x1B2FF, 0x1F004, 0x1F004, 0x1F0CF, 0x1F0CF,
+        0x1F18E, 0x1F18E, 0x1F191, 0x1F19A, 0x1F1E6, 0x1F1FF, 0x1F200, 0x1F202, 0x1F210, 0x1F23B,
+        0x1F240, 0x1F248, 0x1F250, 0x1F251, 0x1F260, 0x1F265, 0x1F300, 0x1F320, 0x1F32D, 0x1F335,
+        0x1F337, 0x1F37C, 0x1F37E, 0x1F393, 0x1F3A0, 0x1F3CA, 0x1F3CF, 0x1F3D3, 0x1F3E0, 0x1F3F0,
+        0x1F3F4, 0x1F3F4, 0x1F3F8, 0x1F43E, 0x1F440, 0x1F440, 0x1F442, 0x1F4FC, 0x1F4FF, 0x1F53D,
+        0x1F54B, 0x1F54E, 0x1F550, 0x1F567, 0x1F57A, 0x1F57A, 0x1F595, 0x1F596, 0x1F5A4, 0x1F5A4,
+        0x1F5FB, 0x1F64F, 0x1F680, 0x1F6C5, 0x1F6CC, 0x1F6CC, 0x1F6D0, 0x1F6D2, 0x1F6D5, 0x1F6D7,
+        0x1F6EB, 0x1F6EC, 0x1F6F4, 0x1F6FC, 0x1F7E0, 0x1F7EB, 0x1F90C, 0x1F93A, 0x1F93C, 0x1F945,
+        0x1F947, 0x1F9FF, 0x1FA70, 0x1FAFF, 0x20000, 0x2FFFD, 0x30000, 0x3FFFD
+    };
+
+    /**
+     * Widths of the characters of the Basic Multilingual Plane.
+     */
+    private static final byte[] TABLE = new byte[0x10000];
+
+    private static final int ZERO_WIDTH_JOINER = 0x200D;
+
+    /**
+     * Number of characters checked at once when looking for characters that are not ASCII.
+     */
+    private static final int CHUNK = 32;
+
+    static {
+        for (int c = 0; c < TABLE.length; c++) {
+            TABLE[c] = (byte) lookup(c);
+        }
+    }
+
+    /**
+     * Constructor, the class only has static methods.
+     */
+    private DisplayWidth() {
+    }
+
+    /**
+     * Works out the width of a single code point on its own.
+     */
+    private static int lookup(int c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        switch (Character.getType(c)) {
+            case Character.NON_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.FORMAT:
+                //The soft hyphen is shown like a hyphen
+                return c == 0xAD ? 1 : 0;
+            default:
+                break;
+        }
+        //Medial vowels and final consonants of Hangul syllables written with jamo combine with the initial consonant
+        if (c >= 0x1160 && c <= 0x11FF) {
+            return 0;
+        }
+        int low = 0, high = WIDE.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (c < WIDE[2 * middle]) {
+                high = middle - 1;
+            } else if (c > WIDE[2 * middle + 1]) {
+                low = middle + 1;
+            } else {
+                return 2;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Gives the width of a code point on its own.
+     * @return Returns 0, 1 or 2.
+     */
+    static int of(int c) {
+        return c < TABLE.length ? TABLE[c] : lookup(c);
+    }
+
+    private static boolean isRegionalIndicator(int c) {
+        return c >= 0x1F1E6 && c <= 0x1F1FF;
+    }
+
+    private static boolean isEmojiModifier(int c) {
+        return c >= 0x1F3FB && c <= 0x1F3FF;
+    }
+
+    /**
+     * Checks whether every character of text is ASCII, in which case its width is its length.
+     */
+    static boolean isAscii(CharSequence text) {
+        return text instanceof AsciiText || skipAscii(text, 0, text.length()) == text.length();
+    }
+
+    /**
+     * Finds the first character of text[start, end) that is not ASCII, reading the array behind a CharBuffer directly
+     * as the windows of the input are CharBuffers.
+     * @return Returns the index of the character, or end if they are all ASCII.
+     */
+    static int skipAscii(CharSequence text, int start, int end) {
+        if (text instanceof AsciiText) {
+            return end;
+        }
+        if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+            CharBuffer chars = (CharBuffer) text;
+            int base = chars.arrayOffset() + chars.position();
+            return skipAscii(chars.array(), base + start, base + end) - base;
+        }
+        int i = start;
+        if (text instanceof String) {
+            //A String is read directly, as calls through CharSequence cannot be inlined when several kinds of text are aligned
+            String string = (String) text;
+            while (i < end && string.charAt(i) < 0x80) {
+                i++;
+            }
+            return i;
+        }
+        while (i < end && text.charAt(i) < 0x80) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the first character of array[start, end) that is not ASCII. Characters are checked in chunks that are or-ed together,
+     * which the JIT turns into vector instructions, and only a chunk that has a character that is not ASCII is looked at one at a time.
+     */
+    private static int skipAscii(char[] array, int start, int end) {
+        int i = start;
+        for (; i + CHUNK <= end; i += CHUNK) {
+            int bits = 0;
+            for (int k = i; k < i + CHUNK; k++) {
+                bits |= array[k];
+            }
+            if (bits >= 0x80) {
+                break;
+            }
+        }
+        while (i < end && array[i] < 0x80) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Gives the width of a whole String, see width(CharSequence, int, int).
+     */
+    static int width(String text) {
+        return width(text, 0, text.length());
+    }
+
+    /**
+     * Gives the number of columns text[start, end) takes up.
+     * A code point after a zero width joiner and the second of a pair of regional indicators are part of the grapheme cluster before them
+     * and take up no columns of their own, and neither do emoji skin tone modifiers.
+     */
+    static int width(CharSequence text, int start, int end) {
+        //ASCII characters are one column each, the table is only needed from the first character that is not
+        int i = skipAscii(text, start, end);
+        int width = i - start;
+        boolean joined = false, paired = false;
+        while (i < end) {
+            int c = Character.codePointAt(text, i);
+            if (joined || isEmojiModifier(c)) {
+                joined = false;
+            } else if (isRegionalIndicator(c)) {
+                width += paired ? 0 : 2;
+                paired = !paired;
+            } else {
+                width += of(c);
+                paired = false;
+            }
+            joined = c == ZERO_WIDTH_JOINER;
+            i += Character.charCount(c);
+        }
+        return width;
+    }
+
+    /**
+     * Works out the column every character of text starts at, the same way as width, so the width of text[a, b) is columns[b] - columns[a].
+     * @return Returns an array one longer than text, or null if text is ASCII as then the column of every character is its index.
+     */
+    static int[] columns(CharSequence text) {
+        if (isAscii(text)) {
+            return null;
+        }
+        int length = text.length();
+        int[] columns = new int[length + 1];
+        int width = 0;
+        boolean joined = false, paired = false;
+        for (int i = 0; i < length;) {
+            int c = Character.codePointAt(text, i);
+            columns[i] = width;
+            if (joined || isEmojiModifier(c)) {
+                joined = false;
+            } else if (isRegionalIndicator(c)) {
+                width += paired ? 0 : 2;
+                paired = !paired;
+            } else {
+                width += of(c);
+                paired = false;
+            }
+            joined = c == ZERO_WIDTH_JOINER;
+            //The low surrogate of a pair starts at the same column as the high one
+            if (Character.charCount(c) == 2) {
+                columns[i + 1] = columns[i];
+            }
+            i += Character.charCount(c);
+        }
+        columns[length] = width;
+        return columns;
+    }
+
+    /**
+     * Finds the end of the grapheme cluster that starts at i: the code point at i followed by any combining marks, format characters,
+     * spacing marks, emoji modifiers and code points joined with a zero width joiner, or a pair of regional indicators.
+     */
+    static int next(CharSequence text, int i, int end) {
+        int c = Character.codePointAt(text, i);
+        i += Character.charCount(c);
+        if (c < 0x80 && (i == end || text.charAt(i) < 0x80)) {
+            return i;
+        }
+        if (isRegionalIndicator(c) && i < end && isRegionalIndicator(Character.codePointAt(text, i))) {
+            return i + 2;
+        }
+        boolean joined = false;
+        while (i < end) {
+            c = Character.codePointAt(text, i);
+            int type = Character.getType(c);
+            if (!joined && !isEmojiModifier(c) && type != Character.NON_SPACING_MARK && type != Character.ENCLOSING_MARK
+                    && type != Character.COMBINING_SPACING_MARK && type != Character.FORMAT) {
+                break;
+            }
+            joined = c == ZERO_WIDTH_JOINER;
+            i += Character.charCount(c);
+        }
+        return i;
+    }
+
+    /**
+     * Finds how much of text, starting at start, fits in the given number of columns without splitting a grapheme cluster.
+     * @return Returns the largest index up to end such that text[start, index) is at most columns wide.
+     */
+    static int fit(CharSequence text, int start, int end, int columns) {
+        int i = start, width = 0;
+        while (i < end) {
+            int next = next(text, i, end);
+            width += width(text, i, next);
+            if (width > columns) {
+                break;
+            }
+            i = next;
+        }
+        return i;
+    }
+
+    /**
+     * Finds how much of text fits in the given number of columns like fit, but always takes at least the first grapheme cluster
+     * so that splitting a line always moves forward, even when the first character is wider than the space left.
+     */
+    static int cut(CharSequence text, int start, int end, int columns) {
+        int cut = fit(text, start, end, columns);
+        return cut > start || start == end ? cut : next(text, start, end);
+    }
+}
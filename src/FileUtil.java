@@ -1,48 +1,173 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.ArrayList;
-
-/**
- * 
- * Simple file utility class for reading text files.
- * 
- * @author jonl
- *
- */
-public class FileUtil {
-
-    /**
-     * Attempts to read the text file specified by filename and returns an array of Strings (paragraphs) found in the file.
-     * @param filename of the file to read
-     * @return Returns an array of Strings, each string representing a paragraph of text from the file. If an exception occurs an array containing the empty string is returned.
-     */
-    public static String[] readFile(String filename) {
-        try {
-            // try to read from the specified file and store paragraphs (lines of text
-            // with new-line at end) in list and convert list to array for return
-            FileReader fr = new FileReader(filename);
-            BufferedReader bfr = new BufferedReader(fr);
-            ArrayList<String> content = new ArrayList<String>();
-            String paragraph = null;
-            while ((paragraph = bfr.readLine()) != null) {
-                content.add(paragraph);
-            }
-            String[] paragraphs = new String[content.size()];
-            for (int i = 0; i < content.size(); i++) {
-                paragraphs[i] = content.get(i);
-            }
-            return paragraphs;
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found: " + e.getMessage());
-        } catch (IOException e) {
-            System.out.println("I/O Ooops: " + e.getMessage());
-        }
-        // If an exception occurred we will get to here as the return statement above was not executed
-        // so setup a paragraphs array to return which contains the empty string
-        String[] paragraphs = new String[1];
-        paragraphs[0] = "";
-        return paragraphs;
-    }
-}
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * 
+ * Simple file utility class for reading text files.
+ * 
+ * @author jonl
+ *
+ */
+public class FileUtil {
+
+    /**
+     * Attempts to read the text file specified by filename and returns an array of Strings (paragraphs) found in the file.
+     * @param filename of the file to read
+     * @return Returns an array of Strings, each string representing a paragraph of text from the file. If an exception occurs an array containing the empty string is returned.
+     */
+    public static String[] readFile(String filename) {
+        return readFile(filename, Charset.defaultCharset());
+    }
+
+    /**
+     * Attempts to read the text file specified by filename, decoded with the given charset, and returns an array of Strings (paragraphs) found in the file.
+     * @param filename of the file to read
+     * @param charset the charset the file is encoded with
+     * @return Returns an array of Strings, each string representing a paragraph of text from the file. If an exception occurs an array containing the empty string is returned.
+     */
+    public static String[] readFile(String filename, Charset charset) {
+        try {
+            return readParagraphs(filename, charset);
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("I/O Ooops: " + e.getMessage());
+        }
+        // If an exception occurred we will get to here as the return statement above was not executed
+        // so setup a paragraphs array to return which contains the empty string
+        String[] paragraphs = new String[1];
+        paragraphs[0] = "";
+        return paragraphs;
+    }
+
+    /**
+     * Reads the text file specified by filename, decoded with the given charset, and returns the paragraphs found in the file.
+     * Unlike readFile, problems reading the file are thrown to the caller instead of being printed.
+     * @param filename of the file to read
+     * @param charset the charset the file is encoded with
+     * @return Returns an array of Strings, each string representing a paragraph of text from the file.
+     */
+    public static String[] readParagraphs(String filename, Charset charset) throws IOException {
+        // read from the specified file and store paragraphs (lines of text
+        // with new-line at end) in list and convert list to array for return
+        // a tokens file holds paragraphs that have already been decoded, so the charset is not used
+        if (TokenFile.isTokenFile(filename)) {
+            try (ParagraphSource source = new TokenParagraphSource(filename)) {
+                ArrayList<String> content = new ArrayList<String>();
+                String paragraph = null;
+                while ((paragraph = source.nextParagraph()) != null) {
+                    content.add(paragraph);
+                }
+                return content.toArray(new String[content.size()]);
+            }
+        }
+        try (BufferedReader bfr = new BufferedReader(new InputStreamReader(new FileInputStream(filename), charset))) {
+            ArrayList<String> content = new ArrayList<String>();
+            String paragraph = null;
+            while ((paragraph = bfr.readLine()) != null) {
+                content.add(paragraph);
+            }
+            return content.toArray(new String[content.size()]);
+        }
+    }
+
+    /**
+     * Opens the text file specified by filename as a source of paragraphs that are read one at a time instead of all at once.
+     * @param filename of the file to read
+     * @return Returns a ParagraphSource over the file. If the file cannot be opened, a source containing only the empty string is returned (the same as readFile).
+     */
+    public static ParagraphSource openParagraphs(String filename) {
+        return openParagraphs(filename, Charset.defaultCharset());
+    }
+
+    /**
+     * Opens the text file specified by filename, decoded with the given charset, as a source of paragraphs that are read one at a time.
+     * @param filename of the file to read
+     * @param charset the charset the file is encoded with
+     * @return Returns a ParagraphSource over the file. If the file cannot be opened, a source containing only the empty string is returned (the same as readFile).
+     */
+    public static ParagraphSource openParagraphs(String filename, Charset charset) {
+        // "-" stands for standard input
+        if (filename.equals("-")) {
+            return new ReaderParagraphSource(new InputStreamReader(System.in, charset));
+        }
+        try {
+            return new ReaderParagraphSource(new InputStreamReader(new FileInputStream(filename), charset));
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found: " + e.getMessage());
+        }
+        // Mirrors readFile, which returns an array containing the empty string when the file could not be read
+        return new ReaderParagraphSource(new StringReader("\n"));
+    }
+
+    /**
+     * Opens the text file specified by filename, or standard input if it is "-", as a source of live input that hands out
+     * each paragraph as soon as it is complete (see FollowParagraphSource).
+     * Charsets that FollowParagraphSource does not support fall back to openParagraphs, which cannot follow a file.
+     * @param filename of the file to read
+     * @param charset the charset the file is encoded with
+     * @param follow whether to keep waiting for the file to grow at its end
+     * @return Returns a ParagraphSource over the file. If the file cannot be opened, a source containing only the empty string is returned (the same as readFile).
+     */
+    public static ParagraphSource followParagraphs(String filename, Charset charset, boolean follow) {
+        if (!MappedParagraphSource.isSupported(charset)) {
+            return openParagraphs(filename, charset);
+        }
+        if (filename.equals("-")) {
+            return new FollowParagraphSource(System.in, null, charset, false);
+        }
+        try {
+            FileInputStream in = new FileInputStream(filename);
+            return new FollowParagraphSource(in, in.getChannel(), charset, follow);
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found: " + e.getMessage());
+        }
+        // Mirrors readFile, which returns an array containing the empty string when the file could not be read
+        return new ReaderParagraphSource(new StringReader("\n"));
+    }
+
+    /**
+     * Opens the tokens file specified by filename as a source of paragraphs that are already split into words (see TokenParagraphSource).
+     * @param filename of the file to read
+     * @return Returns a ParagraphSource over the file. If the file cannot be opened, a source containing only the empty string is returned (the same as readFile).
+     */
+    public static ParagraphSource openTokens(String filename) {
+        try {
+            return new TokenParagraphSource(filename);
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("I/O Ooops: " + e.getMessage());
+        }
+        // Mirrors readFile, which returns an array containing the empty string when the file could not be read
+        return new ReaderParagraphSource(new StringReader("\n"));
+    }
+
+    /**
+     * Opens the text file specified by filename as a source of paragraphs using a memory-mapped NIO reader (see MappedParagraphSource).
+     * Charsets that the mapped reader does not support fall back to openParagraphs.
+     * @param filename of the file to read
+     * @param charset the charset the file is encoded with
+     * @return Returns a ParagraphSource over the file. If the file cannot be opened, a source containing only the empty string is returned (the same as readFile).
+     */
+    public static ParagraphSource mapParagraphs(String filename, Charset charset) {
+        if (!MappedParagraphSource.isSupported(charset)) {
+            return openParagraphs(filename, charset);
+        }
+        try {
+            return new MappedParagraphSource(filename, charset);
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("I/O Ooops: " + e.getMessage());
+        }
+        // Mirrors readFile, which returns an array containing the empty string when the file could not be read
+        return new ReaderParagraphSource(new StringReader("\n"));
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ *
+ * Paragraph source for live input, such as standard input or a file that is still being written to. A paragraph is handed
+ * out as soon as its line terminator has been read, instead of after a whole buffer has been filled, and before the source
+ * has to wait for more input it runs an idle action, which Align.stream uses to flush the output. When following a file,
+ * the end of the file is not the end of the input: the source keeps polling for new data, and starts again from the
+ * beginning if the file is truncated.
+ * Paragraphs are found in the raw bytes and only decoded once complete, so this only works for charsets that encode
+ * new lines as single ASCII bytes (see MappedParagraphSource.isSupported).
+ *
+ * @author Malak Sadek
+ *
+ */
+public class FollowParagraphSource implements ParagraphSource {
+
+    /**
+     * Time in milliseconds to wait before checking again whether a followed file has grown.
+     */
+    public static final long POLL_MILLIS = 100;
+
+    private InputStream in;
+    private FileChannel channel;
+    private Charset charset;
+    private boolean follow;
+    private Runnable idle;
+    private byte[] buffer = new byte[1 << 16];
+    private int start;
+    private int end;
+    private byte[] paragraph = new byte[256];
+    private int length;
+    private boolean after_cr;
+
+    /**
+     * Constructor.
+     * @param in the input, which is read from its current position
+     * @param channel the channel of the file being followed, used to notice truncation (null for standard input)
+     * @param charset the charset the input is encoded with, must be supported according to MappedParagraphSource.isSupported
+     * @param follow whether to wait for more input at the end instead of ending
+     */
+    FollowParagraphSource(InputStream in, FileChannel channel, Charset charset, boolean follow) {
+        this.in = in;
+        this.channel = channel;
+        this.charset = charset;
+        this.follow = follow;
+    }
+
+    /**
+     * Setter for the action that is run whenever the source is about to wait for more input.
+     */
+    void setIdle(Runnable idle) {
+        this.idle = idle;
+    }
+
+    /**
+     * Reads the next paragraph, waiting until its line terminator arrives. At the end of input that is not followed,
+     * the text after the last line terminator is a paragraph too (the same as readLine).
+     * @return Returns the next paragraph, or null at the end of the input.
+     */
+    @Override
+    public String nextParagraph() throws IOException {
+        while (true) {
+            while (start < end) {
+                byte b = buffer[start++];
+                if (after_cr) {
+                    //The '\n' of a "\r\n" belongs to the paragraph that the '\r' ended, which has already been handed out
+                    after_cr = false;
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+                if (b == '\n' || b == '\r') {
+                    after_cr = b == '\r';
+                    String text = new String(paragraph, 0, length, charset);
+                    length = 0;
+                    return text;
+                }
+                if (length == paragraph.length) {
+                    paragraph = Arrays.copyOf(paragraph, length * 2);
+                }
+                paragraph[length++] = b;
+            }
+            if (!fill()) {
+                if (length == 0) {
+                    return null;
+                }
+                String text = new String(paragraph, 0, length, charset);
+                length = 0;
+                return text;
+            }
+        }
+    }
+
+    /**
+     * Reads more input into the buffer, running the idle action first if nothing is available straight away.
+     * @return Returns false at the end of input that is not followed.
+     */
+    private boolean fill() throws IOException {
+        while (true) {
+            if (idle != null && in.available() == 0) {
+                idle.run();
+            }
+            int read = in.read(buffer, 0, buffer.length);
+            if (read > 0) {
+                start = 0;
+                end = read;
+                return true;
+            }
+            if (read < 0 && !follow) {
+                return false;
+            }
+
+            //A followed file that is now shorter than what has been read was truncated or replaced, so it is read again from the start
+            if (channel != null && channel.size() < channel.position()) {
+                channel.position(0);
+                length = 0;
+                after_cr = false;
+            }
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Stopped following");
+            }
+        }
+    }
+
+    /**
+     * Closes the input.
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ *
+ * Line breaker used by the left, right and center alignments, it puts as many words as fit on each line.
+ * Words longer than the line length are put on a line of their own instead of being split.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class GreedyLineBreaker extends LineBreaker {
+
+    /**
+     * Splits the paragraph into lines in different ways based on several cases.
+     * start marks the beginning of the part of the paragraph that has not been split yet, prev and index are relative to it.
+     */
+    @Override
+    int breakLines(Tokens tokens, int limit, LineSink sink, boolean continued, boolean complete) {
+        CharSequence text = tokens.text();
+        int length = text.length();
+        int start = 0, prev = 0, index, space = 0;
+        if (finish(tokens, limit, sink, continued, complete)) {
+            return length;
+        }
+
+        //Each iteration moves start forward, and so if the rest of the paragraph is still larger than the limit, it means there's still lines to be split
+        while (tokens.width(start, length) > limit) {
+
+            //Finds the index of first space starting from the previous search (prev+1 because using prev would get the same space each time)
+            //space is the number of the space found last time, so the spaces before it are not looked at again
+            space = tokens.next(start + prev + 1, space);
+            index = tokens.space(space);
+            if (index != -1) {
+                index -= start;
+            } else if (!complete) {
+                //The next space may be after the window, so the rest of the line is split once more of the paragraph has been read
+                return start;
+            }
+            int span = index == -1 ? -1 : tokens.width(start, start + index);
+
+            //prev == 0 indicates that this is the first iteration, and index == -1 indicates that no spaces were found
+            //This means that the paragraph is only one word that is longer than the line length, we put it as is and move onto the next paragraph
+            if (index == -1 && prev == 0) {
+                sink.line(text, start, length, false);
+                prev = 0;
+                //Ends current paragraph
+                start = length;
+            }
+
+            //span (the width up to the space) == limit indicates that a word has ended at the limit, so we split at the end of the word and move past the line
+            //span > limit && prev == 0 indicates that there is a word longer than the limit, but it is not the only word in the paragraph,
+            //so we put it on a separate line and continue
+            else if (span == limit || (span > limit && prev == 0)) {
+                sink.line(text, start, start + index, false);
+                start += index + 1;
+                prev = 0;
+            }
+
+            //span > limit indicates that the limit is in the middle of a word, in that case we split at the previous word
+            //and add the current word to a new line
+            //index == -1 indicates that no spaces were found, but it's not the first word, which means it's the last word,
+            //so we put it in a line on its own
+            else if (span > limit || index == -1) {
+                sink.line(text, start, start + prev, false);
+                start += prev + 1;
+                prev = 0;
+            }
+
+            //updates previous each iteration
+            else {
+                prev = index;
+            }
+            //If the remaining words are less than the limit, then we just add all of them and continue to the next paragraph
+            if (tokens.width(start, length) < limit && complete) {
+                sink.line(text, start, length, false);
+            }
+        }
+        return complete ? length : start;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ * Line breaker used by the hyphenated alignments, instead of wrapping a word that crosses the line length
+ * it splits the word at "line length - 1" characters and adds a hyphen.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class HyphenLineBreaker extends LineBreaker {
+
+    /**
+     * Splits and hyphenates the paragraph based on several cases.
+     * start marks the beginning of the part of the paragraph that has not been split yet, prev and index are relative to it.
+     */
+    @Override
+    int breakLines(Tokens tokens, int limit, LineSink sink, boolean continued, boolean complete) {
+        CharSequence text = tokens.text();
+        int length = text.length();
+        int start = 0, prev = 0, index, space = 0;
+        if (finish(tokens, limit, sink, continued, complete)) {
+            return length;
+        }
+
+        //Each iteration moves start forward, and so if the rest of the paragraph is still larger than the limit, it means there's still lines to be split
+        while (tokens.width(start, length) > limit) {
+
+            //Finds the index of first space starting from the previous search (prev+1 because using prev would get the same space each time)
+            //space is the number of the space found last time, so the spaces before it are not looked at again
+            space = tokens.next(start + prev + 1, space);
+            index = tokens.space(space);
+            if (index != -1) {
+                index -= start;
+            } else if (!complete) {
+                //The next space may be after the window, so the rest of the line is split once more of the paragraph has been read
+                return start;
+            }
+            int span = index == -1 ? -1 : tokens.width(start, start + index);
+
+            //span (the width up to the space) == limit means that the limit falls on a space, no need to hyphenate, so we just split the line and move past it, then continue
+            if (span == limit) {
+                sink.line(text, start, start + index, false);
+                start += index + 1;
+                prev = 0;
+            }
+
+            //In any other case where the span exceeds the limit, the word must be hyphenated
+            else if (span > limit) {
+
+                //limit - prev <= 2 indicates that there is a small word that would wrap to new line,
+                //This condition is to avoid hyphening on a space (where it is not needed), by splitting at the previous word
+                if (limit - tokens.width(start, start + prev) <= 2) {
+                    sink.line(text, start, start + prev, false);
+                    start += prev + 1;
+                }
+
+                //This is the general case, we split at "limit - 1" to take "line length - 1" characters and add a hyphen to make "line length" characters
+                //and then move start to the limit so that the rest of word still there and is wrapped to the new line and continue
+                else {
+                    int cut = cut(tokens, start, limit);
+                    sink.line(text, start, cut, true);
+                    start = cut;
+                }
+                prev = 0;
+            }
+
+            //index == -1 indicates that no spaces were found, this is either one big word or there is only one word remaining
+            //we split at "limit - 1" to take "line length - 1" characters and add a hyphen to make "line length" characters
+            //and then move start to the limit so that the rest of word still there and is wrapped to the new line and continue
+            else if (index == -1) {
+                int cut = cut(tokens, start, limit);
+                sink.line(text, start, cut, true);
+                start = cut;
+            }
+
+            //updates previous each iteration
+            else {
+                prev = index;
+            }
+            //If the remaining words are less than the limit, then we just add all of them and continue to the next paragraph
+            if (tokens.width(start, length) < limit && complete) {
+                sink.line(text, start, length, false);
+            }
+        }
+        return complete ? length : start;
+    }
+
+    /**
+     * Finds where to split a word at "line length - 1" columns, so that the hyphen makes the line exactly the line length.
+     * Grapheme clusters are never split, so the line may be a column shorter when a wide character does not fit.
+     * At least one character is always taken, so a line length of 1 still moves forward (with the hyphen past the line length).
+     */
+    private static int cut(Tokens tokens, int start, int limit) {
+        return tokens.isAscii() ? start + Math.max(1, limit - 1) : DisplayWidth.cut(tokens.text(), start, tokens.length(), limit - 1);
+    }
+}
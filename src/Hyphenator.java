@@ -0,0 +1,417 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * Finds the points where a word may be hyphenated using Liang's algorithm (the one TeX uses) with TeX-style pattern files.
+ * A pattern such as "hy3ph" or ".ab4i" gives a value to the gaps between its letters, the values of all patterns that
+ * occur in a word are combined by taking the highest one, and the word may be hyphenated at every gap with an odd value.
+ * Exceptions listed in \hyphenation{...} are turned into patterns for the whole word with values higher than any ordinary pattern.
+ * The patterns are packed into a trie made of a few arrays, and each thread keeps its own scratch space and a bounded cache of the
+ * hyphenation points of recent words, so looking up a word that was seen before creates no objects. A Hyphenator is immutable and can be shared by threads.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class Hyphenator {
+
+    /**
+     * Minimum number of letters before a hyphen.
+     */
+    public static final int LEFT_MIN = 2;
+
+    /**
+     * Minimum number of letters after a hyphen.
+     */
+    public static final int RIGHT_MIN = 3;
+
+    /**
+     * Number of words in each thread's cache, it has to be a power of two.
+     */
+    public static final int CACHE_SIZE = 1 << 12;
+
+    /**
+     * Words with fewer letters than this have their hyphenation points cached, the points of a word are kept in the bits of a long.
+     */
+    private static final int CACHED_LENGTH = 64;
+
+    //The trie: the edges of node n are edge_chars/edge_targets[edge_start[n] .. edge_start[n + 1]), sorted by character.
+    //A node where a pattern ends has its values in the values array, starting at value_start[n] (-1 if no pattern ends there)
+    //and one longer than the node's depth
+    private int[] edge_start;
+    private char[] edge_chars;
+    private int[] edge_targets;
+    private int[] value_start;
+    private byte[] values;
+    private String name;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Constructor, packs the patterns into the trie.
+     * @param patterns maps the letters of each pattern to its values
+     * @param name identifies the patterns, e.g. in the keys of an AlignCache
+     */
+    private Hyphenator(TreeMap<String, byte[]> patterns, String name) {
+        this.name = name;
+        //Inserts the patterns into a tree of nodes first
+        Node root = new Node();
+        int count = 1;
+        for (Map.Entry<String, byte[]> pattern : patterns.entrySet()) {
+            Node node = root;
+            for (char c : pattern.getKey().toCharArray()) {
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                    count++;
+                }
+                node = child;
+            }
+            node.values = pattern.getValue();
+        }
+
+        //Then numbers the nodes breadth first, so the children of every node are next to each other and sorted by character
+        edge_start = new int[count + 1];
+        edge_chars = new char[count - 1];
+        edge_targets = new int[count - 1];
+        value_start = new int[count];
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        int edges = 0, next = 1;
+        for (int n = 0; n < count; n++) {
+            Node node = queue.remove();
+            edge_start[n] = edges;
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                edge_chars[edges] = child.getKey();
+                edge_targets[edges++] = next++;
+                queue.add(child.getValue());
+            }
+            value_start[n] = node.values == null ? -1 : packed.size();
+            if (node.values != null) {
+                packed.write(node.values, 0, node.values.length);
+            }
+        }
+        edge_start[count] = edges;
+        values = packed.toByteArray();
+    }
+
+    /**
+     * Loads a TeX-style pattern file, either a file on disk or a resource on the class path.
+     * The file holds patterns separated by whitespace, optionally inside \patterns{...}, and exceptions such as "ta-ble" inside
+     * \hyphenation{...}. Anything after a '%' on a line is a comment. The file has to be encoded in UTF-8.
+     * @param name the path of the file, or the name of the resource
+     * @throws FileNotFoundException if there is neither a file nor a resource with that name
+     * @throws IllegalArgumentException if a pattern is not valid
+     */
+    public static Hyphenator load(String name) throws IOException {
+        InputStream in;
+        try {
+            in = new FileInputStream(name);
+        } catch (FileNotFoundException e) {
+            in = Hyphenator.class.getResourceAsStream(name.startsWith("/") ? name : "/" + name);
+            if (in == null) {
+                throw e;
+            }
+        }
+        byte[] bytes;
+        try (InputStream input = in) {
+            bytes = input.readAllBytes();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return parse(new String(bytes, StandardCharsets.UTF_8), "patterns-" + Long.toHexString(crc.getValue()));
+    }
+
+    /**
+     * Creates a hyphenator from the text of a pattern file, see load.
+     * @param name identifies the patterns
+     * @throws IllegalArgumentException if a pattern is not valid
+     */
+    public static Hyphenator parse(String text, String name) {
+        TreeMap<String, byte[]> patterns = new TreeMap<>();
+        boolean exceptions = false;
+        for (String line : text.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('%');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            for (String token : line.trim().split("\\s+")) {
+                //\patterns{ and \hyphenation{ start a section, } ends it
+                if (token.startsWith("\\hyphenation")) {
+                    exceptions = true;
+                    token = token.substring(token.indexOf('{') + 1);
+                } else if (token.startsWith("\\patterns")) {
+                    exceptions = false;
+                    token = token.substring(token.indexOf('{') + 1);
+                } else if (token.startsWith("\\")) {
+                    continue;
+                }
+                token = token.replace("{", "").replace("}", "");
+                if (token.isEmpty()) {
+                    continue;
+                }
+                if (exceptions) {
+                    addException(patterns, token);
+                } else {
+                    addPattern(patterns, token);
+                }
+            }
+        }
+        return new Hyphenator(patterns, name);
+    }
+
+    /**
+     * Adds a pattern such as "hy3ph", whose digits give the values of the gaps between its letters.
+     */
+    private static void addPattern(TreeMap<String, byte[]> patterns, String pattern) {
+        StringBuilder letters = new StringBuilder();
+        byte[] pattern_values = new byte[pattern.length() + 1];
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c >= '0' && c <= '9') {
+                pattern_values[letters.length()] = (byte) (c - '0');
+            } else {
+                letters.append(Character.toLowerCase(c));
+            }
+        }
+        if (letters.length() == 0) {
+            throw new IllegalArgumentException("Invalid hyphenation pattern: " + pattern);
+        }
+        patterns.put(letters.toString(), Arrays.copyOf(pattern_values, letters.length() + 1));
+    }
+
+    /**
+     * Adds an exception such as "ta-ble" as a pattern for the whole word, with 9 where it may be hyphenated and 8 everywhere else.
+     */
+    private static void addException(TreeMap<String, byte[]> patterns, String word) {
+        StringBuilder pattern = new StringBuilder(".");
+        boolean hyphen = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c == '-') {
+                hyphen = true;
+            } else {
+                //The value of the gap before each letter but the first
+                if (pattern.length() > 1) {
+                    pattern.append(hyphen ? '9' : '8');
+                }
+                pattern.append(c);
+                hyphen = false;
+            }
+        }
+        addPattern(patterns, pattern.append('.').toString());
+    }
+
+    /**
+     * Finds the last point where a word may be hyphenated that leaves at most max characters before the hyphen.
+     * Characters before the first letter and after the last one (such as quotes and punctuation) are kept on either side of the hyphen,
+     * and words with anything other than letters in between (such as "well-known" or a URL) are not hyphenated.
+     * @param text contains the word
+     * @param start index of the first character of the word
+     * @param end index after the last character of the word
+     * @param max the most characters of the word that can go before the hyphen
+     * @return Returns the number of characters of the word that go before the hyphen, or 0 if it cannot be hyphenated there.
+     */
+    int lastBreak(CharSequence text, int start, int end, int max) {
+        int core_start = start;
+        while (core_start < end && !Character.isLetter(text.charAt(core_start))) {
+            core_start++;
+        }
+        int core_end = end;
+        while (core_end > core_start && !Character.isLetter(text.charAt(core_end - 1))) {
+            core_end--;
+        }
+        int length = core_end - core_start;
+        int limit = Math.min(max - (core_start - start), length - RIGHT_MIN);
+        if (limit < LEFT_MIN) {
+            return 0;
+        }
+        for (int i = core_start; i < core_end; i++) {
+            if (!Character.isLetter(text.charAt(i))) {
+                return 0;
+            }
+        }
+
+        Scratch local = scratch.get();
+        int point;
+        if (length < CACHED_LENGTH) {
+            long points = local.cached(text, core_start, core_end);
+            if (points == -1) {
+                int[] gaps = gaps(text, core_start, core_end, local);
+                points = 0;
+                for (int i = LEFT_MIN; i <= length - RIGHT_MIN; i++) {
+                    points |= (long) (gaps[i + 1] & 1) << i;
+                }
+                local.store(text, core_start, core_end, points);
+            }
+            //The points are bits, so the last one that fits is the highest bit at or below limit
+            long fitting = points & (-1L >>> (63 - limit));
+            point = fitting == 0 ? 0 : 63 - Long.numberOfLeadingZeros(fitting);
+        } else {
+            //Words too long for the bits of a long are not cached
+            int[] gaps = gaps(text, core_start, core_end, local);
+            point = limit;
+            while (point >= LEFT_MIN && (gaps[point + 1] & 1) == 0) {
+                point--;
+            }
+            point = point < LEFT_MIN ? 0 : point;
+        }
+        return point == 0 ? 0 : point + core_start - start;
+    }
+
+    /**
+     * Computes the values of the gaps of a word with Liang's algorithm, the word may be hyphenated after i letters if gaps[i + 1] is odd.
+     * @return Returns the thread's scratch array holding the values.
+     */
+    private int[] gaps(CharSequence text, int start, int end, Scratch local) {
+        int length = end - start;
+        //The word is surrounded by '.' so patterns can match its beginning and end
+        char[] word = local.word(length + 2);
+        int[] gaps = local.gaps(length + 3);
+        word[0] = '.';
+        for (int i = 0; i < length; i++) {
+            word[i + 1] = Character.toLowerCase(text.charAt(start + i));
+        }
+        word[length + 1] = '.';
+        Arrays.fill(gaps, 0, length + 3, 0);
+
+        //Every pattern that matches at each position raises the values of the gaps it covers
+        for (int i = 0; i < length + 2; i++) {
+            int node = 0;
+            for (int j = i; j < length + 2; j++) {
+                node = child(node, word[j]);
+                if (node < 0) {
+                    break;
+                }
+                int value = value_start[node];
+                if (value >= 0) {
+                    for (int k = 0; k <= j - i + 1; k++) {
+                        gaps[i + k] = Math.max(gaps[i + k], values[value + k]);
+                    }
+                }
+            }
+        }
+        return gaps;
+    }
+
+    /**
+     * Follows the edge of a node for a character.
+     * @return Returns the child node, or -1 if no pattern continues with that character.
+     */
+    private int child(int node, char c) {
+        int low = edge_start[node], high = edge_start[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char label = edge_chars[middle];
+            if (label < c) {
+                low = middle + 1;
+            } else if (label > c) {
+                high = middle - 1;
+            } else {
+                return edge_targets[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Identifies the patterns, so output hyphenated with different patterns can be told apart.
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * A node of the tree the patterns are inserted into before they are packed into arrays.
+     */
+    private static class Node {
+
+        private TreeMap<Character, Node> children = new TreeMap<>();
+        private byte[] values;
+    }
+
+    /**
+     * Working space for one thread: arrays for the word being hyphenated and a direct-mapped cache of the points of recent words.
+     */
+    private static class Scratch {
+
+        private char[] word = new char[CACHED_LENGTH + 2];
+        private int[] gaps = new int[CACHED_LENGTH + 3];
+        private char[][] keys = new char[CACHE_SIZE][];
+        private long[] cached_points = new long[CACHE_SIZE];
+
+        char[] word(int length) {
+            if (word.length < length) {
+                word = new char[length];
+            }
+            return word;
+        }
+
+        int[] gaps(int length) {
+            if (gaps.length < length) {
+                gaps = new int[length];
+            }
+            return gaps;
+        }
+
+        /**
+         * Looks a word up in the cache without creating any objects.
+         * @return Returns the cached points, or -1 if the word is not cached.
+         */
+        long cached(CharSequence text, int start, int end) {
+            if (end - start > CACHED_LENGTH) {
+                return -1;
+            }
+            int slot = slot(text, start, end);
+            char[] key = keys[slot];
+            if (key == null || key.length != end - start) {
+                return -1;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != text.charAt(start + i)) {
+                    return -1;
+                }
+            }
+            return cached_points[slot];
+        }
+
+        /**
+         * Stores the points of a word, replacing whichever word was in its slot.
+         */
+        void store(CharSequence text, int start, int end, long points) {
+            if (end - start > CACHED_LENGTH) {
+                return;
+            }
+            int slot = slot(text, start, end);
+            char[] key = keys[slot];
+            if (key == null || key.length != end - start) {
+                key = new char[end - start];
+                keys[slot] = key;
+            }
+            for (int i = 0; i < key.length; i++) {
+                key[i] = text.charAt(start + i);
+            }
+            cached_points[slot] = points;
+        }
+
+        private static int slot(CharSequence text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        }
+    }
+}
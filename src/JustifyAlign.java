@@ -0,0 +1,78 @@
+/**
+ *
+ * Specialized alignment class for justified alignment, it inherits from the general alignment abstract class.
+ * The line breaker spreads the spaces between the words so every line but the last of a paragraph fills the line length,
+ * so the lines themselves are not padded.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class JustifyAlign extends Align {
+
+    /**
+     * The line breaker without hyphenation patterns is stateless so a single instance is shared by every justified alignment object.
+     */
+    private static final LineBreaker JUSTIFY = new JustifyLineBreaker(null);
+
+    private LineBreaker breaker = JUSTIFY;
+    private Hyphenator hyphenator;
+
+    /**
+     * Constructor, calls Align's general constructor.
+     */
+    JustifyAlign(String file_name, int limit) {
+        super(file_name, limit);
+    }
+
+    /**
+     * Setter for the hyphenation patterns, the points where words may be hyphenated become extra places where lines can be broken.
+     * @param hyphenator the loaded patterns, or null to only break lines between words
+     */
+    @Override
+    void setHyphenator(Hyphenator hyphenator) {
+        this.hyphenator = hyphenator;
+        this.breaker = hyphenator == null ? JUSTIFY : new JustifyLineBreaker(hyphenator);
+    }
+
+    /**
+     * JustifyAlign's implementation of the abstract spacesBefore method, justified lines are not padded.
+     */
+    @Override
+    int spacesBefore(int length) {
+        return 0;
+    }
+
+    /**
+     * JustifyAlign's lines are never padded, so their widths are not measured.
+     */
+    @Override
+    boolean isPadded() {
+        return false;
+    }
+
+    /**
+     * JustifyAlign's implementation of the abstract padSpaces method.
+     * The line breaker has already spread the spaces, so the line is returned as it is
+     */
+    @Override
+    String padSpaces(String line) {
+        return line;
+    }
+
+    /**
+     * JustifyAlign's implementation of the abstract getMode method, followed by the patterns if they are used.
+     */
+    @Override
+    String getMode() {
+        return hyphenator == null ? "J" : "J:" + hyphenator;
+    }
+
+    /**
+     * JustifyAlign overrides the line breaker used by the abstract Align class as it chooses the breaks of the whole paragraph.
+     * @return Returns the justifying line breaker.
+     */
+    @Override
+    LineBreaker getLineBreaker() {
+        return breaker;
+    }
+}
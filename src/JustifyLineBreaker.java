@@ -0,0 +1,422 @@
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ *
+ * Line breaker used by the justified alignment. Instead of putting as many words as fit on each line, it chooses the line breaks
+ * of the whole paragraph that minimise the total badness of its lines (the square of the spaces left over on each line but the last),
+ * like the Knuth-Plass algorithm TeX uses, and then spreads the left over spaces between the words so every line but the last is
+ * exactly the line length wide.
+ *
+ * The paragraph is split into fragments: words, or the pieces of words between the points where they may be hyphenated when patterns
+ * are loaded (see Hyphenator). Words longer than the line length are cut into pieces of "line length - 1" columns like HyphenLineBreaker does.
+ * The best breaks are found by dynamic programming over primitive arrays: for every fragment, only the lines that can end there are
+ * tried, which is at most about limit / 2 of them, so the time grows linearly with the length of the paragraph.
+ *
+ * To keep the memory bounded, the paragraph is handled in blocks of BLOCK_WORDS words (more for very long lines). Any line that continues
+ * past the end of a block has to start at one of the last breaks in it, so once the best ways of reaching all of those breaks have a break
+ * in common, every line before that break is final and is written. When they have none in common (which happens when many lines can be
+ * filled exactly), the lines in the first half of the block on the best of those ways are written instead, looking ahead half a block.
+ * Each block starts where the previous one stopped writing, so the lines only depend on the text and not on how it is split into windows.
+ *
+ * Unlike the other line breakers, paragraphs that fit on a line are not left out, and an empty paragraph is an empty line.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class JustifyLineBreaker extends LineBreaker {
+
+    /**
+     * Number of words of the paragraph handled at once, or four times the line length if that is more.
+     */
+    public static final int BLOCK_WORDS = 1 << 13;
+
+    /**
+     * Badness added for a line that ends with a hyphen, the same as a line with about 7 spaces left over.
+     */
+    public static final int HYPHEN_PENALTY = 50;
+
+    //What comes after a fragment: a space between words, a hyphenation point inside a word, or the end of the paragraph
+    private static final byte GLUE = 0;
+    private static final byte HYPHEN = 1;
+    private static final byte END = 2;
+
+    private Hyphenator hyphenator;
+
+    /**
+     * Constructor.
+     * @param hyphenator finds the points where words may be hyphenated, or null if words are only cut when they do not fit on a line
+     */
+    JustifyLineBreaker(Hyphenator hyphenator) {
+        this.hyphenator = hyphenator;
+    }
+
+    /**
+     * Splits the paragraph one block at a time, see the class description.
+     */
+    @Override
+    int breakLines(Tokens tokens, int limit, LineSink sink, boolean continued, boolean complete) {
+        Block block = new Block(limit);
+        int start = 0;
+        while (true) {
+            int end = block.run(tokens, start, sink, continued || start > 0, complete);
+            if (end == start || end == tokens.length()) {
+                return end;
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * The fragments of one block and the arrays of the dynamic program, reused for every block of a paragraph.
+     */
+    private class Block {
+
+        private int limit;
+        private int size;
+        //The number of the space after the last word split into fragments, so the next block carries on from there
+        private int space;
+        private int count;
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private byte[] after = new byte[64];
+        //spans[k] is the number of columns fragment k takes up
+        private int[] spans = new int[64];
+        //widths[k] is the width of fragments 0 to k - 1, counting the space after each of them
+        private long[] widths = new long[65];
+        private long[] best = new long[65];
+        private int[] prev = new int[65];
+        private int[] queue = new int[65];
+        private boolean[] marks = new boolean[65];
+        private int[] points = new int[16];
+        private char[] line;
+        private CharBuffer line_text;
+
+        Block(int limit) {
+            this.limit = limit;
+            this.size = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(BLOCK_WORDS, 4L * limit));
+            this.line = new char[Math.min(limit, 1 << 16) + 1];
+            this.line_text = CharBuffer.wrap(line);
+        }
+
+        /**
+         * Splits the next block of the paragraph, starting at from, and writes the lines that are final.
+         * @param continued whether lines of the paragraph have been written before from
+         * @param complete whether text goes up to the end of the paragraph
+         * @return Returns the index of the first character that has not been split off yet, which is from if more of the paragraph
+         * has to be read first, and the length of text once the end of the paragraph has been split.
+         */
+        int run(Tokens tokens, int from, LineSink sink, boolean continued, boolean complete) {
+            CharSequence text = tokens.text();
+            int next = fragments(tokens, from, complete);
+            if (next == -1) {
+                return from;
+            }
+            if (next == text.length()) {
+                //The end of the paragraph, every line is written and an empty paragraph is an empty line
+                if (count > 0) {
+                    breaks(true);
+                    write(text, count, sink, true);
+                } else if (!continued) {
+                    sink.line(text, 0, 0, false);
+                }
+                return next;
+            }
+            breaks(false);
+            int last = converge();
+            if (last == 0) {
+                last = lookahead();
+            }
+            write(text, last, sink, false);
+            return starts[last];
+        }
+
+        /**
+         * Splits the words of the block into fragments, which is the words up to the end of the paragraph or the first size words.
+         * Then the paragraph continues after the last fragment, and where the next word starts is kept in starts[count].
+         * @return Returns the index of the next word, the length of text if the block goes up to the end of the paragraph,
+         * or -1 if the block may continue after text.
+         */
+        private int fragments(Tokens tokens, int from, boolean complete) {
+            CharSequence text = tokens.text();
+            count = 0;
+            int length = text.length();
+            int i = skipSpaces(text, from, length);
+            for (int words = 0; i < length && words < size; words++) {
+                space = tokens.next(i, space);
+                int end = tokens.space(space);
+                if (end == -1) {
+                    if (!complete) {
+                        return -1;
+                    }
+                    end = length;
+                }
+                word(tokens, i, end);
+                i = skipSpaces(text, end, length);
+            }
+            if (i == length) {
+                if (!complete) {
+                    //The paragraph may end after the last word, which changes how its line is split
+                    return -1;
+                }
+                if (count > 0) {
+                    after[count - 1] = END;
+                }
+            }
+            ensure(count + 1);
+            starts[count] = i;
+            widths[0] = 0;
+            for (int k = 0; k < count; k++) {
+                widths[k + 1] = widths[k] + spans[k] + (after[k] == GLUE ? 1 : 0);
+            }
+            return i;
+        }
+
+        /**
+         * Finds the first character at or after i that is not a space.
+         */
+        private int skipSpaces(CharSequence text, int i, int to) {
+            while (i < to && text.charAt(i) == ' ') {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Adds the fragments of a word, split where it may be hyphenated.
+         */
+        private void word(Tokens tokens, int start, int end) {
+            CharSequence text = tokens.text();
+            if (hyphenator != null) {
+                //lastBreak gives the points from the last one back, so they are collected first and then added in order
+                int found = 0, max = end - start, point;
+                while ((point = hyphenator.lastBreak(text, start, end, max)) > 0) {
+                    if (found == points.length) {
+                        points = Arrays.copyOf(points, found * 2);
+                    }
+                    points[found++] = point;
+                    max = point - 1;
+                }
+                int piece_start = start;
+                for (int k = found - 1; k >= 0; k--) {
+                    piece(tokens, piece_start, start + points[k], HYPHEN);
+                    piece_start = start + points[k];
+                }
+                start = piece_start;
+            }
+            piece(tokens, start, end, GLUE);
+        }
+
+        /**
+         * Adds a fragment, first cutting off pieces of "line length - 1" columns while it is too long to fit on a line.
+         */
+        private void piece(Tokens tokens, int start, int end, byte next) {
+            int cut = Math.max(1, limit - 1);
+            int span = tokens.width(start, end);
+            while (span > (next == HYPHEN ? cut : limit)) {
+                //Pieces are cut between grapheme clusters, so a wide character may leave a piece one column short,
+                //and a single cluster wider than the line is left whole
+                int stop = DisplayWidth.cut(tokens.text(), start, end, cut);
+                if (stop == end) {
+                    break;
+                }
+                int piece = tokens.width(start, stop);
+                add(start, stop, piece, HYPHEN);
+                start = stop;
+                span -= piece;
+            }
+            add(start, end, span, next);
+        }
+
+        private void add(int start, int end, int span, byte next) {
+            ensure(count + 1);
+            starts[count] = start;
+            ends[count] = end;
+            spans[count] = span;
+            after[count] = next;
+            count++;
+        }
+
+        /**
+         * Grows the arrays to hold at least size fragments.
+         */
+        private void ensure(int size) {
+            if (size >= starts.length) {
+                int capacity = Math.max(size + 1, starts.length * 2);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                after = Arrays.copyOf(after, capacity);
+                spans = Arrays.copyOf(spans, capacity);
+                widths = Arrays.copyOf(widths, capacity + 1);
+                best = Arrays.copyOf(best, capacity + 1);
+                prev = Arrays.copyOf(prev, capacity + 1);
+                queue = Arrays.copyOf(queue, capacity + 1);
+                marks = Arrays.copyOf(marks, capacity + 1);
+            }
+        }
+
+        /**
+         * Gives the width of the line made of fragments i to j - 1, including the hyphen if it ends inside a word.
+         */
+        private long width(int i, int j) {
+            return widths[j] - widths[i] - (after[j - 1] == GLUE ? 1 : 0) + (after[j - 1] == HYPHEN ? 1 : 0);
+        }
+
+        /**
+         * Finds the best way to reach every break, best[j] is the least total badness of the lines before fragment j
+         * and prev[j] is where the last of those lines starts. A line made of a single fragment is always allowed.
+         * The lines that can end at j start from first up to j - 1, and first only moves forward as j does. They are tried from the
+         * widest one, and as the space left over only grows after that, the rest are skipped once even the least best[i] of them
+         * (kept in a monotone queue) plus that space's badness is worse than the best line found. When lines are equally good
+         * the one starting nearest to j is chosen.
+         */
+        private void breaks(boolean complete) {
+            best[0] = 0;
+            int first = 0, head = 0, tail = 0;
+            for (int j = 1; j <= count; j++) {
+                //The queue holds the breaks from first to j - 1 whose best is less than that of every later one
+                while (tail > head && best[queue[tail - 1]] >= best[j - 1]) {
+                    tail--;
+                }
+                queue[tail++] = j - 1;
+                while (first < j - 1 && width(first, j) > limit) {
+                    first++;
+                }
+                while (queue[head] < first) {
+                    head++;
+                }
+                long least_best = best[queue[head]];
+
+                //The last line of the paragraph is not justified, so the space left over on it does not count
+                boolean last = complete && j == count;
+                long penalty = after[j - 1] == HYPHEN ? HYPHEN_PENALTY : 0;
+                long least = Long.MAX_VALUE;
+                int from = j - 1;
+                for (int i = first; i < j; i++) {
+                    long badness = 0;
+                    if (!last) {
+                        long slack = Math.max(0, limit - width(i, j));
+                        badness = slack * slack + penalty;
+                        if (least_best + badness > least) {
+                            break;
+                        }
+                    }
+                    if (best[i] + badness <= least) {
+                        least = best[i] + badness;
+                        from = i;
+                    }
+                }
+                best[j] = least;
+                prev[j] = from;
+            }
+        }
+
+        /**
+         * Finds the last break that the best ways of reaching all the breaks a line continuing after the block could start from have in common.
+         * @return Returns the break, every line before it is final.
+         */
+        private int converge() {
+            int distinct = 0;
+            for (int k = count; k >= 0 && (k == count || widths[count] - widths[k] <= limit); k--) {
+                marks[k] = true;
+                distinct++;
+            }
+            //Moves the latest marked break back to where its last line starts until only one is left
+            int k = count;
+            for (; distinct > 1; k--) {
+                if (marks[k]) {
+                    marks[k] = false;
+                    if (marks[prev[k]]) {
+                        distinct--;
+                    } else {
+                        marks[prev[k]] = true;
+                    }
+                }
+            }
+            while (!marks[k]) {
+                k--;
+            }
+            marks[k] = false;
+            return k;
+        }
+
+        /**
+         * Chooses the lines to write when the best ways of reaching the last breaks have none in common: the last break a line continuing
+         * after the block could start from with the least badness is taken, and the lines of its best way in the first half of the block are written.
+         * @return Returns the last break to write up to.
+         */
+        private int lookahead() {
+            int chosen = count;
+            for (int k = count - 1; k >= 0 && widths[count] - widths[k] <= limit; k--) {
+                if (best[k] < best[chosen]) {
+                    chosen = k;
+                }
+            }
+            while (widths[chosen] > widths[count] / 2) {
+                chosen = prev[chosen];
+            }
+            return chosen;
+        }
+
+        /**
+         * Writes the lines on the best way of reaching break last, which are traced back through prev.
+         */
+        private void write(CharSequence text, int last, LineSink sink, boolean complete) {
+            int lines = 0;
+            for (int k = last; k > 0; k = prev[k]) {
+                lines++;
+            }
+            int[] path = new int[lines + 1];
+            for (int k = last, n = lines; n >= 0; k = prev[k], n--) {
+                path[n] = k;
+            }
+            for (int n = 0; n < lines; n++) {
+                int i = path[n], j = path[n + 1];
+                writeLine(text, i, j, !(complete && j == count), sink);
+            }
+        }
+
+        /**
+         * Builds the line made of fragments i to j - 1 in line, with the left over spaces spread between its words if justify is true,
+         * the leftmost gaps get one more space when they cannot all get the same number.
+         */
+        private void writeLine(CharSequence text, int i, int j, boolean justify, LineSink sink) {
+            boolean hyphen = after[j - 1] == HYPHEN;
+            long width = width(i, j);
+            int gaps = 0;
+            long chars = 0;
+            for (int k = i; k < j; k++) {
+                chars += ends[k] - starts[k];
+                if (k < j - 1 && after[k] == GLUE) {
+                    gaps++;
+                }
+            }
+            long extra = justify && gaps > 0 ? Math.max(0, limit - width) : 0;
+            //Wide characters take up more columns than characters, so the line is sized by its characters
+            int size = (int) (chars + gaps + extra);
+            if (size > line.length) {
+                line = new char[size];
+                line_text = CharBuffer.wrap(line);
+            }
+            int position = 0, gap = 0;
+            for (int k = i; k < j; k++) {
+                if (text instanceof String) {
+                    ((String) text).getChars(starts[k], ends[k], line, position);
+                    position += ends[k] - starts[k];
+                } else {
+                    for (int c = starts[k]; c < ends[k]; c++) {
+                        line[position++] = text.charAt(c);
+                    }
+                }
+                if (k < j - 1 && after[k] == GLUE) {
+                    long spaces = 1 + extra / gaps + (gap < extra % gaps ? 1 : 0);
+                    for (long s = 0; s < spaces; s++) {
+                        line[position++] = ' ';
+                    }
+                    gap++;
+                }
+            }
+            sink.line(line_text, 0, position, hyphen);
+        }
+    }
+}
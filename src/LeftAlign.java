@@ -1,4 +1,3 @@
-import java.util.ArrayList;
 /**
  *
  * Specialized alignment class for left alignment, it inherits from the general alignment abstract class.
@@ -16,21 +15,35 @@ public class LeftAlign extends Align {
     }
 
     /**
-     * LeftAlign's implementation of the abstract print method.
-     * @param lines contains the lines of text that have been split according to the line length
+     * LeftAlign's implementation of the abstract spacesBefore method, left aligned lines are not padded.
      */
-    void print(ArrayList<String> lines) {
-        for (String line : lines) {
-            System.out.print(line + "\n");
-        }
+    @Override
+    int spacesBefore(int length) {
+        return 0;
+    }
+
+    /**
+     * LeftAlign's lines are never padded, so their widths are not measured.
+     */
+    @Override
+    boolean isPadded() {
+        return false;
     }
 
     /**
      * LeftAlign's implementation of the abstract padSpaces method.
-     * It has no need for this method and throws an exception of it's used
+     * Left aligned lines need no padding, so the line is returned as it is
      */
     @Override
     String padSpaces(String line) {
-        throw new NullPointerException("Cannot use padding with left alignment");
+        return line;
+    }
+
+    /**
+     * LeftAlign's implementation of the abstract getMode method.
+     */
+    @Override
+    String getMode() {
+        return "L";
     }
 }
@@ -0,0 +1,65 @@
+/**
+ *
+ * An abstract line breaking class that the specific line breaking engines inherit from.
+ * A line breaker walks over a paragraph once using start and end offsets, and hands each line to a LineSink as a span
+ * of the paragraph, so the rest of the paragraph never has to be copied with substring after every line.
+ * The paragraph is searched for spaces once, when it is split into Tokens, and the breakers walk over the indexes of the spaces from then on.
+ * The line length is counted in columns (see DisplayWidth), which for ASCII text is the same as the number of characters.
+ *
+ * @author Malak Sadek
+ *
+ */
+public abstract class LineBreaker {
+
+    /**
+     * Splits a single paragraph into lines according to the line length.
+     * @param text contains one paragraph of text
+     * @param limit the line length
+     * @param sink receives the lines of the paragraph in order
+     */
+    void breakLines(CharSequence text, int limit, LineSink sink) {
+        breakLines(Tokens.of(text), limit, sink, false, true);
+    }
+
+    /**
+     * Splits part of a paragraph into lines, so that a paragraph too long to be held in memory can be split one window at a time.
+     * If the window is not complete, splitting stops at the last line break that does not depend on the text after the window,
+     * and the caller continues with a window starting at the returned offset. The breakers only remember where the current
+     * line starts between lines, so continuing from there gives exactly the same lines as splitting the whole paragraph at once.
+     * @param text the rest of the paragraph, or the beginning of it if complete is false
+     * @param limit the line length
+     * @param sink receives the lines of the paragraph in order
+     * @param continued whether lines of the paragraph have already been split off before text
+     * @param complete whether text goes up to the end of the paragraph
+     * @return Returns the offset in text of the first character that has not been split off yet.
+     */
+    int breakLines(CharSequence text, int limit, LineSink sink, boolean continued, boolean complete) {
+        return breakLines(Tokens.of(text), limit, sink, continued, complete);
+    }
+
+    /**
+     * Splits a paragraph, or part of one, that has already been split into words, see breakLines(CharSequence, int, LineSink, boolean, boolean).
+     * The lines are handed to sink as spans of tokens.text().
+     */
+    abstract int breakLines(Tokens tokens, int limit, LineSink sink, boolean continued, boolean complete);
+
+    /**
+     * Handles the end of the paragraph for a window that continues a paragraph: after a line has been split off, the rest is put
+     * on a line of its own if it is shorter than the line length (the same check the breakers make after every line).
+     * @return Returns true if the rest of the paragraph was handled, and false if it still has to be split.
+     */
+    static boolean finish(Tokens tokens, int limit, LineSink sink, boolean continued, boolean complete) {
+        if (!continued || !complete) {
+            return false;
+        }
+        int length = tokens.length();
+        int width = tokens.width(0, length);
+        if (width > limit) {
+            return false;
+        }
+        if (width < limit) {
+            sink.line(tokens.text(), 0, length, false);
+        }
+        return true;
+    }
+}
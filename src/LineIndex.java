@@ -0,0 +1,349 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ *
+ * Index of a file that lets any range of its aligned lines be printed without splitting everything before them (see Align.printLines).
+ * Every CHECKPOINT_SIZE bytes of input, at the start of a paragraph, a checkpoint records the byte offset of that paragraph,
+ * and for every layout (line length and align_mode) that was indexed, the number of lines the aligned output has before it.
+ * To print line n, the file is read from the last checkpoint whose line count is at most n, so at most CHECKPOINT_SIZE bytes
+ * (or a single longer paragraph) are split before the first line that is printed, however large the file is.
+ * Paragraphs longer than a window of the source are split one window at a time, so the memory used does not depend on their length either.
+ * Checkpoints are found in the raw bytes by a MappedParagraphSource, so text files can only be indexed in charsets it supports,
+ * tokens files (see TokenFile) can always be indexed.
+ *
+ * The index is kept in a file that starts with MAGIC and VERSION, followed by the engine version, size, last modified time and
+ * charset of the input, the number of checkpoints and of layouts, the key of every layout, the offsets of the checkpoints and then
+ * the line counts of each layout, which all have an extra entry at the end for the end of the file.
+ * An index whose input has changed since it was made, or that was made by a different engine version, is out of date and is built again.
+ *
+ * @author Malak Sadek
+ *
+ */
+public final class LineIndex {
+
+    /**
+     * Number of bytes of input between checkpoints.
+     */
+    public static final int CHECKPOINT_SIZE = 1 << 16;
+
+    /**
+     * The first bytes of every index file.
+     */
+    static final byte[] MAGIC = "ALIGNIDX".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Version of the format, it has to be changed whenever the format changes so old files are not misread.
+     */
+    static final int VERSION = 1;
+
+    private String engine = AlignCache.ENGINE_VERSION;
+    private long size;
+    private long modified;
+    private String charset;
+
+    //Checkpoint i is at offsets[i] and the entry at count is the end of the file
+    private int count;
+    private long[] offsets = new long[17];
+
+    //lines.get(j)[i] is the number of lines before checkpoint i in the layout with the key layouts.get(j)
+    private ArrayList<String> layouts = new ArrayList<>();
+    private ArrayList<long[]> lines = new ArrayList<>();
+
+    /**
+     * Constructor, an index is built or read by the static methods.
+     */
+    private LineIndex() {
+    }
+
+    /**
+     * Checks whether a file can be indexed.
+     * @return Returns true for tokens files and for text in a charset that MappedParagraphSource supports.
+     */
+    static boolean isSupported(String file_name, Charset charset) {
+        return TokenFile.isTokenFile(file_name) || MappedParagraphSource.isSupported(charset);
+    }
+
+    /**
+     * Gives the key of the layout of an alignment, which includes the line length and the align_mode with its hyphenation patterns.
+     */
+    static String key(Align align) {
+        return align.getLimit() + " " + align.getMode();
+    }
+
+    /**
+     * Indexes a file for several layouts in a single pass, every paragraph is split into words once and then into lines for each of them.
+     * @param aligns the alignments, which all have to be for the same file and charset, and set to be mapped (see Align.setMapped)
+     * @return Returns the new index.
+     * @throws IOException if the file cannot be read
+     */
+    static LineIndex build(Align[] aligns) throws IOException {
+        LineIndex index = new LineIndex();
+        File file = new File(aligns[0].getFileName());
+        //The file is checked before it is read, so a change made while it is read makes the index out of date
+        index.size = file.length();
+        index.modified = file.lastModified();
+        index.charset = aligns[0].getCharset().name();
+        index.scan(aligns, true);
+        return index;
+    }
+
+    /**
+     * Reads an index for an alignment from a file, and builds it and writes it back if the file does not exist yet,
+     * is out of date or does not have the alignment's layout. An index that only lacks the layout keeps its other layouts.
+     * @param align the alignment, set to be mapped (see Align.setMapped)
+     * @throws IOException if the file is not an index, or the input or the index cannot be read or written
+     */
+    static LineIndex load(String filename, Align align) throws IOException {
+        LineIndex index = read(filename);
+        if (index == null || !index.isCurrent(align.getFileName(), align.getCharset())) {
+            index = build(new Align[] {align});
+        } else if (index.layout(align) < 0) {
+            index.add(align);
+        } else {
+            return index;
+        }
+        index.write(filename);
+        return index;
+    }
+
+    /**
+     * Checks whether the index was made from the file as it is now, in the given charset and with the current engine version.
+     */
+    boolean isCurrent(String file_name, Charset charset) {
+        File file = new File(file_name);
+        return engine.equals(AlignCache.ENGINE_VERSION) && size == file.length() && modified == file.lastModified()
+                && this.charset.equals(charset.name());
+    }
+
+    /**
+     * Adds a layout to an index that is up to date, using its existing checkpoints.
+     * @throws IOException if the file cannot be read, or has changed so that a checkpoint is no longer the start of a paragraph
+     */
+    void add(Align align) throws IOException {
+        scan(new Align[] {align}, false);
+    }
+
+    /**
+     * Reads the file and counts the lines of every paragraph in the layout of each alignment, adding the layouts to the index.
+     * @param checkpoints true to choose the checkpoints while the file is read, false to count the lines at the existing ones
+     */
+    private void scan(Align[] aligns, boolean checkpoints) throws IOException {
+        StageEvent event = AlignStats.begin("index");
+        long paragraphs = 0;
+        long[][] counts = new long[aligns.length][offsets.length];
+        long[] total = new long[aligns.length];
+        LineSink[] sinks = new LineSink[aligns.length];
+        for (int j = 0; j < aligns.length; j++) {
+            int layout = j;
+            sinks[j] = (text, start, end, hyphen) -> total[layout]++;
+        }
+        try (ParagraphSource source = aligns[0].openParagraphs()) {
+            int k = 0;
+            long position = source.position();
+            CharSequence text;
+            while ((text = AlignStats.nextText(source)) != null) {
+                if (checkpoints ? k == 0 || position - offsets[k - 1] >= CHECKPOINT_SIZE : k < count && position == offsets[k]) {
+                    if (k + 1 >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                        for (int j = 0; j < aligns.length; j++) {
+                            counts[j] = Arrays.copyOf(counts[j], offsets.length);
+                        }
+                    }
+                    offsets[k] = position;
+                    for (int j = 0; j < aligns.length; j++) {
+                        counts[j][k] = total[j];
+                    }
+                    k++;
+                } else if (!checkpoints && k < count && position > offsets[k]) {
+                    throw new IOException("File changed while it was indexed: " + aligns[0].getFileName());
+                }
+
+                if (source.isComplete()) {
+                    //The paragraph is split into words once for all the layouts
+                    Tokens tokens = Tokens.of(text);
+                    for (int j = 0; j < aligns.length; j++) {
+                        aligns[j].getLineBreaker().breakLines(tokens, aligns[j].getLimit(), sinks[j]);
+                    }
+                } else {
+                    //A paragraph that is read in windows is split one window at a time for each layout in turn, reading it again from its start
+                    for (int j = 0; j < aligns.length; j++) {
+                        if (j > 0) {
+                            source.seek(position);
+                            text = AlignStats.nextText(source);
+                        }
+                        aligns[j].writeParagraph(source, text, sinks[j]);
+                    }
+                }
+                position = source.position();
+                paragraphs++;
+            }
+            if (!checkpoints && (k != count || position != offsets[count])) {
+                throw new IOException("File changed while it was indexed: " + aligns[0].getFileName());
+            }
+            count = k;
+            offsets[count] = position;
+            for (int j = 0; j < aligns.length; j++) {
+                counts[j][count] = total[j];
+                layouts.add(key(aligns[j]));
+                lines.add(Arrays.copyOf(counts[j], count + 1));
+            }
+        }
+        AlignStats.end(event, paragraphs);
+    }
+
+    /**
+     * Finds the layout of an alignment in the index.
+     * @return Returns the number of the layout, or -1 if it has not been indexed.
+     */
+    int layout(Align align) {
+        return layouts.indexOf(key(align));
+    }
+
+    /**
+     * Finds the last checkpoint with at most line lines before it in a layout, which is where reading starts to print that line.
+     * @return Returns the number of the checkpoint, or the number of checkpoints if the layout has fewer lines than that.
+     */
+    int checkpoint(int layout, long line) {
+        long[] counts = lines.get(layout);
+        if (counts[count] <= line) {
+            return count;
+        }
+        //The last entry at or below line, the first checkpoint is at 0 lines
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (counts[middle] <= line) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gives the byte offset of a checkpoint in the file, or the size of the file for the entry after the last checkpoint.
+     */
+    long offset(int checkpoint) {
+        return offsets[checkpoint];
+    }
+
+    /**
+     * Gives the number of lines before a checkpoint in a layout.
+     */
+    long lines(int layout, int checkpoint) {
+        return lines.get(layout)[checkpoint];
+    }
+
+    /**
+     * Gives the number of lines the whole file is aligned into in a layout.
+     */
+    long lineCount(int layout) {
+        return lines.get(layout)[count];
+    }
+
+    /**
+     * Getter for the keys of the layouts that have been indexed (see key), in the order of their numbers.
+     */
+    ArrayList<String> getLayouts() {
+        return layouts;
+    }
+
+    /**
+     * Writes the index to a file, replacing it if it exists.
+     */
+    void write(String filename) throws IOException {
+        Path file = Paths.get(filename).toAbsolutePath();
+        //Written to a temporary file first so a viewer reading the index at the same time never sees a partly written one
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), OutputSink.BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(engine);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeUTF(charset);
+            out.writeInt(count);
+            out.writeInt(layouts.size());
+            for (String layout : layouts) {
+                out.writeUTF(layout);
+            }
+            for (int i = 0; i <= count; i++) {
+                out.writeLong(offsets[i]);
+            }
+            for (long[] counts : lines) {
+                for (int i = 0; i <= count; i++) {
+                    out.writeLong(counts[i]);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads an index from a file.
+     * @return Returns the index, or null if the file does not exist or was written in an older version of the format.
+     * @throws IOException if the file is not an index or cannot be read
+     */
+    static LineIndex read(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(filename)), OutputSink.BUFFER_SIZE))) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not an index file: " + filename);
+            }
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            LineIndex index = new LineIndex();
+            index.engine = in.readUTF();
+            index.size = in.readLong();
+            index.modified = in.readLong();
+            index.charset = in.readUTF();
+            index.count = in.readInt();
+            int layouts = in.readInt();
+            if (index.count < 0 || layouts < 0) {
+                throw new IOException("Corrupt index file: " + filename);
+            }
+            for (int j = 0; j < layouts; j++) {
+                index.layouts.add(in.readUTF());
+            }
+            index.offsets = new long[index.count + 1];
+            for (int i = 0; i <= index.count; i++) {
+                index.offsets[i] = in.readLong();
+            }
+            for (int j = 0; j < layouts; j++) {
+                long[] counts = new long[index.count + 1];
+                for (int i = 0; i <= index.count; i++) {
+                    counts[i] = in.readLong();
+                }
+                index.lines.add(counts);
+            }
+            return index;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
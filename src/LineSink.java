@@ -0,0 +1,18 @@
+/**
+ *
+ * Receives the lines produced by a LineBreaker as spans of the original paragraph instead of as new Strings.
+ *
+ * @author Malak Sadek
+ *
+ */
+public interface LineSink {
+
+    /**
+     * Called once for every line, in order.
+     * @param text the paragraph that the line was taken from
+     * @param start index of the first character of the line in text
+     * @param end index after the last character of the line in text
+     * @param hyphen true if a hyphen has to be added after the characters of the line
+     */
+    void line(CharSequence text, int start, int end, boolean hyphen);
+}
@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * Paragraph source that memory-maps the file instead of reading it through a Reader.
+ * Paragraph boundaries are found by scanning the mapped bytes for line terminators, and only the bytes of the paragraph
+ * being returned are decoded, so the file is never copied through intermediate buffers.
+ * The file is mapped one window at a time, so files larger than 2GB can be read.
+ * Paragraphs that are pure ASCII can also be handed out as views of the mapped bytes without decoding them at all (see nextText).
+ * A paragraph longer than TEXT_SIZE bytes is decoded and handed out one window of characters at a time through nextText and moreText,
+ * the same as ReaderParagraphSource, so it never has to be held in memory whole however long it is.
+ * This only works for charsets that encode new lines as the single ASCII bytes (such as UTF-8 and ISO-8859-1), see isSupported.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class MappedParagraphSource implements ParagraphSource {
+
+    /**
+     * Size of the part of the file that is mapped at once.
+     */
+    public static final int WINDOW_SIZE = 1 << 28;
+
+    /**
+     * Number of bytes of a paragraph that are handed out at once, longer paragraphs are handed out in windows (see isComplete).
+     */
+    public static final int TEXT_SIZE = ReaderParagraphSource.WINDOW_SIZE;
+
+    private FileChannel channel;
+    private long size;
+    private CharsetDecoder decoder;
+    private MappedByteBuffer window;
+    private long window_start;
+    private long position;
+    private int start;
+    private int end;
+    private boolean ascii;
+    private boolean ascii_view;
+    private AsciiText text = new AsciiText();
+
+    //A paragraph that is handed out in windows is decoded into chars, of which the first held are the current window,
+    //and its bytes are decoded up to decoded
+    private boolean complete = true;
+    private char[] chars;
+    private int held;
+    private long decoded;
+
+    /**
+     * Constructor, opens and maps the start of the file.
+     * @param filename of the file to read
+     * @param charset the charset the file is encoded with, must be supported according to isSupported
+     * @throws java.io.FileNotFoundException if the file cannot be opened (the same as FileReader)
+     */
+    MappedParagraphSource(String filename, Charset charset) throws IOException {
+        this.channel = new RandomAccessFile(filename, "r").getChannel();
+        this.size = channel.size();
+        //Malformed input is replaced, the same as FileReader does
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        //ASCII paragraphs can be used without decoding if the charset decodes ASCII bytes as the same characters
+        this.ascii_view = charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+        map(0, WINDOW_SIZE);
+    }
+
+    /**
+     * Checks whether a charset encodes '\n' and '\r' as their single ASCII bytes, so that paragraphs can be found by scanning bytes.
+     * @return Returns true if the charset can be used with this class.
+     */
+    static boolean isSupported(Charset charset) {
+        return charset.canEncode() && Arrays.equals("\n\r".getBytes(charset), new byte[] {'\n', '\r'});
+    }
+
+    /**
+     * Finds the next line terminator in the mapped bytes and decodes the bytes before it.
+     * @return Returns the next paragraph, or null at the end of the file.
+     */
+    @Override
+    public String nextParagraph() throws IOException {
+        if (!advance()) {
+            return null;
+        }
+        if (complete) {
+            return decode();
+        }
+        //A paragraph that is handed out in windows is joined back together
+        CharSequence text = fill();
+        StringBuilder paragraph = new StringBuilder(text);
+        while (!complete) {
+            text = moreText(text.length());
+            paragraph.append(text);
+        }
+        return paragraph.toString();
+    }
+
+    /**
+     * Finds the next paragraph like nextParagraph, but if every byte of it is ASCII (and the charset decodes ASCII bytes as themselves)
+     * it is returned as an AsciiText view of the mapped bytes instead of being decoded, the same view is reused for every paragraph.
+     * A paragraph longer than TEXT_SIZE bytes is decoded into a window instead, and only its first window is returned (see isComplete).
+     * @return Returns the next paragraph, or null at the end of the file.
+     */
+    @Override
+    public CharSequence nextText() throws IOException {
+        if (!advance()) {
+            return null;
+        }
+        if (!complete) {
+            return fill();
+        }
+        if (ascii && ascii_view) {
+            text.set(window, start, end - start);
+            return text;
+        }
+        return decode();
+    }
+
+    /**
+     * Checks whether the text returned by the last call to nextText or moreText reaches the end of its paragraph.
+     */
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Drops the characters of the current window that have been split off and decodes more of the paragraph.
+     * If nothing could be dropped the window grows, as a line or word that does not fit has to be kept whole
+     * (or the next character did not fit in the rest of the window).
+     * @param consumed number of characters at the start of the window that are no longer needed
+     * @return Returns a view of the new window, which starts after the consumed characters.
+     */
+    @Override
+    public CharSequence moreText(int consumed) throws IOException {
+        System.arraycopy(chars, consumed, chars, 0, held - consumed);
+        held -= consumed;
+        if (consumed == 0) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        return fill();
+    }
+
+    /**
+     * Scans for the end of the next paragraph and moves position past its line terminator.
+     * Paragraphs end at '\n', '\r' or "\r\n", the same as BufferedReader.readLine.
+     * Afterwards start and end hold the indexes of the paragraph in the window and ascii says whether all of its bytes are ASCII.
+     * If there is no line terminator in the next TEXT_SIZE bytes, the paragraph is handed out in windows instead:
+     * complete is false and position stays at the start of the paragraph until its last window has been decoded (see fill).
+     * @return Returns false at the end of the file.
+     */
+    private boolean advance() throws IOException {
+        complete = true;
+        if (position >= size) {
+            return false;
+        }
+
+        //Scans for the end of the paragraph, mapping a new window starting at the paragraph if it goes past the current one
+        //Every byte is also ORed into seen, bytes are signed so seen ends up negative if any of them was 0x80 or above
+        long offset = position;
+        long limit = Math.min(size, position + TEXT_SIZE);
+        int index = (int) (offset - window_start);
+        int seen = 0;
+        while (offset < limit) {
+            if (index >= window.limit()) {
+                map(position, WINDOW_SIZE);
+                index = (int) (offset - window_start);
+            }
+            byte b = window.get(index);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            seen |= b;
+            offset++;
+            index++;
+        }
+        if (offset == limit && limit < size) {
+            complete = false;
+            held = 0;
+            decoded = position;
+            decoder.reset();
+            if (chars == null) {
+                chars = new char[TEXT_SIZE];
+            }
+            return true;
+        }
+
+        start = (int) (position - window_start);
+        end = (int) (offset - window_start);
+        ascii = seen >= 0;
+        position = skipTerminator(offset, position);
+        return true;
+    }
+
+    /**
+     * Decodes more of a paragraph that is handed out in windows, until the window is full or the paragraph ends.
+     * Once the paragraph ends, complete is set and position is moved past its line terminator.
+     * @return Returns a view of the decoded window.
+     */
+    private CharSequence fill() throws IOException {
+        while (!complete && held < chars.length) {
+            //Every character takes at least one byte, so the bytes decoded at once always fit in the rest of the window
+            long chunk_end = Math.min(size, decoded + Math.min(chars.length - held, WINDOW_SIZE));
+            if (decoded < window_start || chunk_end > window_start + window.limit()) {
+                map(decoded, WINDOW_SIZE);
+            }
+            int from = (int) (decoded - window_start);
+            int to = (int) (chunk_end - window_start);
+            int index = from;
+            while (index < to) {
+                byte b = window.get(index);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                index++;
+            }
+            boolean last = index < to || chunk_end == size;
+            ByteBuffer bytes = window.duplicate();
+            bytes.limit(index).position(from);
+            CharBuffer out = CharBuffer.wrap(chars, held, chars.length - held);
+            decoder.decode(bytes, out, last);
+            if (last) {
+                decoder.flush(out);
+            }
+            held = out.position();
+            decoded += bytes.position() - from;
+            if (last) {
+                complete = true;
+                position = skipTerminator(index + window_start, decoded);
+            } else if (bytes.position() == from) {
+                //Only part of a character is left before the end of the window, it is decoded once some of the window has been consumed
+                break;
+            }
+        }
+        return CharBuffer.wrap(chars, 0, held);
+    }
+
+    /**
+     * Moves past the line terminator at offset, "\r\n" counts as one.
+     * @param offset where the paragraph ends, which is the end of the file or a line terminator
+     * @param base where a new window is mapped from if the terminator is not in the current one, so the bytes from base stay mapped
+     * @return Returns where the next paragraph starts.
+     */
+    private long skipTerminator(long offset, long base) throws IOException {
+        if (offset >= size) {
+            return offset;
+        }
+        if (offset >= window_start + window.limit()) {
+            map(base, WINDOW_SIZE);
+        }
+        byte b = window.get((int) (offset - window_start));
+        offset++;
+        if (b == '\r' && offset < size) {
+            if (offset - window_start >= window.limit()) {
+                map(base, WINDOW_SIZE);
+            }
+            if (window.get((int) (offset - window_start)) == '\n') {
+                offset++;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Gives the byte offset of the next paragraph in the file.
+     */
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Continues reading from the paragraph at a byte offset, mapping a new window starting there if it is not in the current one.
+     * @param position the start of a paragraph, as returned by position
+     */
+    @Override
+    public void seek(long position) throws IOException {
+        complete = true;
+        if (position < window_start || position >= window_start + window.limit()) {
+            map(Math.min(position, size), WINDOW_SIZE);
+        }
+        this.position = position;
+    }
+
+    /**
+     * Decodes the bytes of the current paragraph.
+     */
+    private String decode() throws IOException {
+        ByteBuffer bytes = window.duplicate();
+        bytes.limit(end).position(start);
+        return decoder.decode(bytes).toString();
+    }
+
+    /**
+     * Maps length bytes of the file starting at start (or up to the end of the file if that is shorter).
+     */
+    private void map(long start, long length) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, size - start));
+        window_start = start;
+    }
+
+    /**
+     * Closes the file, the mapped windows are released once they are no longer used.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
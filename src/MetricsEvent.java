@@ -0,0 +1,79 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+/**
+ *
+ * Flight recorder event that records the counters and stage times of AlignStats every second while they are being measured.
+ *
+ * @author Malak Sadek
+ *
+ */
+@Name("textalignment.Metrics")
+@Label("Alignment Metrics")
+@Category("Text Alignment")
+@Description("Counters and stage times of the alignment since they started being measured")
+@Period("1 s")
+public class MetricsEvent extends jdk.jfr.Event {
+
+    @Label("Read Time")
+    @Timespan
+    long read;
+
+    @Label("Wrap Time")
+    @Timespan
+    long wrap;
+
+    @Label("Pad Time")
+    @Timespan
+    long pad;
+
+    @Label("Write Time")
+    @Timespan
+    long write;
+
+    @Label("Paragraphs")
+    long paragraphs;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Hyphenations")
+    long hyphenations;
+
+    @Label("Long Words")
+    long long_words;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytes_in;
+
+    @Label("Bytes Out")
+    @DataAmount
+    long bytes_out;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+    /**
+     * Copies the values of a snapshot into the event.
+     */
+    void set(AlignStats.Snapshot snapshot) {
+        read = snapshot.nanos(AlignStats.Stage.READ);
+        wrap = snapshot.nanos(AlignStats.Stage.WRAP);
+        pad = snapshot.nanos(AlignStats.Stage.PAD);
+        write = snapshot.nanos(AlignStats.Stage.WRITE);
+        paragraphs = snapshot.count(AlignStats.Counter.PARAGRAPHS);
+        lines = snapshot.count(AlignStats.Counter.LINES);
+        hyphenations = snapshot.count(AlignStats.Counter.HYPHENATIONS);
+        long_words = snapshot.count(AlignStats.Counter.LONG_WORDS);
+        bytes_in = snapshot.count(AlignStats.Counter.BYTES_IN);
+        bytes_out = snapshot.count(AlignStats.Counter.BYTES_OUT);
+        allocated = snapshot.count(AlignStats.Counter.ALLOCATED_BYTES);
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * Aligns one file at several layouts (line lengths and align modes) in a single pass over the input.
+ * The file is read and decoded once, into batches of paragraphs, and every batch is split and padded for each layout
+ * on a ForkJoinPool, so the layouts are aligned in parallel from the same paragraphs, which are only split into words (see Tokens) once. Each layout writes to its own output,
+ * and the batches are written in their original order, so every output is the same as aligning the file with that layout on its own.
+ * Only a bounded number of batches is in flight at once, so the memory used does not grow with the size of the file.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class MultiAligner {
+
+    /**
+     * Number of characters of text that are read into one batch.
+     */
+    public static final int BATCH_SIZE = 1 << 16;
+
+    /**
+     * Number of batches per thread that can be aligned or waiting to be written before the next batch is read.
+     */
+    public static final int BATCHES_PER_THREAD = 2;
+
+    private Align[] aligns;
+    private int threads;
+
+    /**
+     * Constructor.
+     * @param aligns the alignment objects of the layouts, each with its own output (only their read-only methods are used by the threads)
+     * @param threads number of threads to align with
+     */
+    MultiAligner(Align[] aligns, int threads) {
+        this.aligns = aligns;
+        this.threads = threads;
+    }
+
+    /**
+     * Reads the file of the first alignment object once and writes every layout to its alignment object's output.
+     * @throws IOException if the file cannot be read
+     */
+    void run() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        //The aligned batches of every layout, in the order they were read
+        ArrayDeque<ArrayList<CompletableFuture<byte[]>>> pending = new ArrayDeque<>();
+        try (ParagraphSource source = aligns[0].openParagraphs()) {
+            CharSequence paragraph = AlignStats.nextParagraphText(source);
+
+            //If there is no first paragraph, then the file was empty (the same check as readFile)
+            if (paragraph == null) {
+                System.out.print("usage: java AlignText file_name line_length [align_mode]");
+                System.exit(1);
+            }
+
+            ArrayList<CharSequence> batch = new ArrayList<>();
+            while (paragraph != null) {
+                int size = 0;
+                batch.clear();
+                while (paragraph != null && size < BATCH_SIZE) {
+                    batch.add(paragraph);
+                    //Each paragraph also ends with a new line
+                    size += paragraph.length() + 1;
+                    paragraph = AlignStats.nextParagraphText(source);
+                }
+                CharSequence[] paragraphs = batch.toArray(new CharSequence[0]);
+
+                //The batch is split into words once, and then every layout's line breaker walks over the same words
+                CompletableFuture<Tokens[]> tokens = CompletableFuture.supplyAsync(() -> Tokens.of(paragraphs), pool);
+                ArrayList<CompletableFuture<byte[]>> results = new ArrayList<>(aligns.length);
+                for (Align align : aligns) {
+                    Charset charset = align.getOutput().getCharset();
+                    results.add(tokens.thenApplyAsync(split -> align.render(split, 0, split.length, charset), pool));
+                }
+                pending.add(results);
+
+                //The oldest batch is written once enough batches are in flight, while the newer ones are still being aligned
+                if (pending.size() > threads * BATCHES_PER_THREAD) {
+                    write(pending.remove());
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.remove());
+            }
+        } finally {
+            pool.shutdownNow();
+            for (Align align : aligns) {
+                align.getOutput().flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the aligned batch of every layout to the layout's output, waiting for the ones that are still being aligned.
+     */
+    private void write(ArrayList<CompletableFuture<byte[]>> results) {
+        for (int i = 0; i < aligns.length; i++) {
+            byte[] bytes = results.get(i).join();
+            aligns[i].getOutput().write(bytes, 0, bytes.length);
+        }
+    }
+}
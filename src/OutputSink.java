@@ -0,0 +1,415 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *
+ * Buffered output for the aligned text. Lines are encoded into one large reusable buffer that is only written
+ * to the channel (stdout, a file or any FileChannel) when it is full or flushed, instead of printing every line separately.
+ * Padding is copied from a preallocated block of spaces, so no Strings are built while writing.
+ * Spaces, new lines and hyphens are written as single ASCII bytes when the charset encodes them that way, and otherwise as the bytes
+ * the charset encodes them as. Charsets whose encoder starts every encoding with a byte order mark (such as UTF-16) are written
+ * without one, so that parts of the output rendered separately can be joined, and are then decoded as big-endian.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class OutputSink implements Closeable, Flushable {
+
+    /**
+     * Size of the output buffer in bytes.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Preallocated spaces that padding is copied from.
+     */
+    private static final byte[] SPACES = new byte[1024];
+
+    static {
+        Arrays.fill(SPACES, (byte) ' ');
+    }
+
+    private WritableByteChannel channel;
+    private PrintStream stream;
+    private ByteArrayOutputStream memory;
+    //Whether the output is rendered to be written out later by another sink, which counts it then
+    private boolean rendered;
+    private byte[] bytes;
+    private int count;
+    private long drained;
+    private ByteBuffer buffer;
+    private Charset charset;
+    private CharsetEncoder encoder;
+    private boolean ascii_compatible;
+
+    //The encoded space, new line and hyphen, and the block of encoded spaces that padding is copied from
+    private byte[] space;
+    private byte[] line_end;
+    private byte[] hyphen;
+    private byte[] spaces;
+    //Whether all three are the single ASCII bytes, which are then written directly
+    private boolean ascii_bytes;
+    //Number of bytes of byte order mark the encoder writes at the start of every encoding, which are left out
+    private int mark;
+
+    /**
+     * Constructor, uses a buffer of BUFFER_SIZE bytes.
+     * @param channel the channel that the buffered output is written to
+     * @param charset the charset used to encode the text
+     */
+    OutputSink(WritableByteChannel channel, Charset charset) {
+        this(channel, charset, BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param channel the channel that the buffered output is written to
+     * @param charset the charset used to encode the text
+     * @param buffer_size size of the output buffer in bytes
+     */
+    OutputSink(WritableByteChannel channel, Charset charset, int buffer_size) {
+        this.channel = channel;
+        //Output is written straight into bytes, buffer wraps the same array for the encoder and the channel
+        this.bytes = new byte[buffer_size];
+        this.buffer = ByteBuffer.wrap(bytes);
+        this.charset = charset;
+        //Characters that cannot be encoded are replaced, the same as System.out does
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        //ASCII characters can be copied straight into the buffer if the charset encodes them as single bytes
+        this.ascii_compatible = charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+
+        //The mark is whatever encoding one space adds on top of the encoded space itself
+        this.mark = 2 * " ".getBytes(charset).length - "  ".getBytes(charset).length;
+        this.space = encodeChar(' ');
+        this.line_end = encodeChar('\n');
+        this.hyphen = encodeChar('-');
+        this.ascii_bytes = Arrays.equals(space, new byte[] {' '}) && Arrays.equals(line_end, new byte[] {'\n'})
+                && Arrays.equals(hyphen, new byte[] {'-'});
+        if (ascii_bytes) {
+            this.spaces = SPACES;
+        } else {
+            this.spaces = new byte[SPACES.length * space.length];
+            for (int i = 0; i < spaces.length; i += space.length) {
+                System.arraycopy(space, 0, spaces, i, space.length);
+            }
+        }
+    }
+
+    /**
+     * Encodes a single character with the sink's charset, without the byte order mark.
+     */
+    private byte[] encodeChar(char c) {
+        byte[] encoded = String.valueOf(c).getBytes(charset);
+        return Arrays.copyOfRange(encoded, Math.min(mark, encoded.length), encoded.length);
+    }
+
+    /**
+     * Creates a sink that writes to standard output using the same charset as System.out.
+     * It writes through System.out so that its output stays in order with anything else printed there.
+     */
+    static OutputSink stdout() {
+        String encoding = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        Charset charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        OutputSink sink = new OutputSink(Channels.newChannel(System.out), charset);
+        sink.stream = System.out;
+        return sink;
+    }
+
+    /**
+     * Creates a sink that writes to a file, the file is created or replaced.
+     * Output files are written in the charset their input was decoded with, which is the platform default unless '--charset' was given.
+     * @param filename of the file to write
+     * @param charset the charset used to encode the text
+     */
+    static OutputSink toFile(String filename, Charset charset) throws IOException {
+        FileChannel file = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new OutputSink(file, charset);
+    }
+
+    /**
+     * Creates a sink that collects the encoded output in memory, the bytes are returned by toByteArray.
+     * Used to render parts of the text on other threads before they are written out in order.
+     * @param charset the charset used to encode the text
+     * @param buffer_size size of the output buffer in bytes
+     */
+    static OutputSink toMemory(Charset charset, int buffer_size) {
+        ByteArrayOutputStream memory = new ByteArrayOutputStream(buffer_size);
+        OutputSink sink = new OutputSink(Channels.newChannel(memory), charset, buffer_size);
+        sink.memory = memory;
+        sink.rendered = true;
+        return sink;
+    }
+
+    /**
+     * Creates a sink that renders text to be written out later like toMemory, but writes every full buffer to channel as it goes
+     * instead of collecting the whole output, so that text too long to be held in memory can be rendered on another thread.
+     * @param channel is given each part of the encoded output in order
+     * @param charset the charset used to encode the text
+     */
+    static OutputSink toParts(WritableByteChannel channel, Charset charset) {
+        OutputSink sink = new OutputSink(channel, charset);
+        sink.rendered = true;
+        return sink;
+    }
+
+    /**
+     * Getter for the charset that the text is encoded with.
+     * @return charset (used to encode the text).
+     */
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Flushes a sink created by toMemory and returns everything that has been written to it.
+     * @return Returns the encoded output.
+     */
+    byte[] toByteArray() {
+        drain();
+        return memory.toByteArray();
+    }
+
+    /**
+     * Gives the number of bytes written to the sink so far, including the ones still in the buffer.
+     */
+    long size() {
+        return drained + count;
+    }
+
+    /**
+     * Writes the characters of text from start to end.
+     */
+    void write(CharSequence text, int start, int end) {
+        //ASCII bytes from the input are copied into the buffer as they are
+        if (ascii_compatible && text instanceof AsciiText) {
+            writeAscii((AsciiText) text, start, end);
+            return;
+        }
+        if (ascii_compatible && text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+            CharBuffer chars = (CharBuffer) text;
+            int base = chars.arrayOffset() + chars.position();
+            start = writeAscii(chars.array(), base + start, base + end) - base;
+        }
+        int i = start;
+        if (ascii_compatible) {
+            //Copies characters directly into the buffer's array while they are ASCII, stopping at the first one that is not
+            copy:
+            while (i < end) {
+                if (count == bytes.length) {
+                    drain();
+                }
+                int stop = Math.min(end, i + bytes.length - count);
+                for (; i < stop; i++) {
+                    char c = text.charAt(i);
+                    if (c >= 0x80) {
+                        break copy;
+                    }
+                    bytes[count++] = (byte) c;
+                }
+            }
+        }
+        //Anything left contains characters that have to go through the encoder
+        if (i < end) {
+            encode(CharBuffer.wrap(text, i, end));
+        }
+    }
+
+    /**
+     * Copies characters from an array directly into the buffer while they are ASCII, for windows of the input read by ReaderParagraphSource.
+     * @return Returns the index of the first character that was not copied, which is end unless a character is not ASCII.
+     */
+    private int writeAscii(char[] chars, int start, int end) {
+        while (start < end) {
+            if (count == bytes.length) {
+                drain();
+            }
+            int stop = Math.min(end, start + bytes.length - count);
+            for (; start < stop; start++) {
+                char c = chars[start];
+                if (c >= 0x80) {
+                    return start;
+                }
+                bytes[count++] = (byte) c;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Copies the bytes of an ASCII view into the buffer, draining it whenever it fills up.
+     */
+    private void writeAscii(AsciiText text, int start, int end) {
+        while (start < end) {
+            if (count == bytes.length) {
+                drain();
+            }
+            int length = Math.min(end - start, bytes.length - count);
+            text.copyTo(bytes, count, start, start + length);
+            count += length;
+            start += length;
+        }
+    }
+
+    /**
+     * Writes the characters of text from start to end followed by a hyphen if hyphen is true.
+     */
+    void write(CharSequence text, int start, int end, boolean hyphen) {
+        write(text, start, end);
+        if (hyphen) {
+            if (ascii_bytes) {
+                write('-');
+            } else {
+                write(this.hyphen, 0, this.hyphen.length);
+            }
+        }
+    }
+
+    /**
+     * Writes a single ASCII character as one byte, only for charsets that encode ASCII as single bytes.
+     */
+    void write(char c) {
+        if (count == bytes.length) {
+            drain();
+        }
+        bytes[count++] = (byte) c;
+    }
+
+    /**
+     * Writes bytes that have already been encoded.
+     */
+    void write(byte[] source, int offset, int length) {
+        while (length > 0) {
+            if (count == bytes.length) {
+                drain();
+            }
+            int chunk = Math.min(length, bytes.length - count);
+            System.arraycopy(source, offset, bytes, count, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes spaces copied from the preallocated block, nothing is written if spaces is zero or negative.
+     */
+    void pad(int spaces) {
+        while (spaces > 0) {
+            int chunk = Math.min(spaces, SPACES.length);
+            write(this.spaces, 0, chunk * space.length);
+            spaces -= chunk;
+        }
+    }
+
+    /**
+     * Ends the current line.
+     */
+    void newline() {
+        if (ascii_bytes) {
+            write('\n');
+        } else {
+            write(line_end, 0, line_end.length);
+        }
+    }
+
+    /**
+     * Encodes characters that are not plain ASCII with the charset's encoder, which writes into the buffer's array through buffer.
+     */
+    private void encode(CharBuffer chars) {
+        if (mark > 0) {
+            encodeMarked(chars);
+            return;
+        }
+        encoder.reset();
+        buffer.clear().position(count);
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            count = buffer.position();
+            drain();
+            buffer.clear();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            count = buffer.position();
+            drain();
+            buffer.clear();
+        }
+        count = buffer.position();
+    }
+
+    /**
+     * Encodes characters with a charset whose encoder starts with a byte order mark, which is left out so it is not repeated in the middle of the output.
+     */
+    private void encodeMarked(CharBuffer chars) {
+        try {
+            ByteBuffer encoded = encoder.reset().encode(chars);
+            if (encoded.remaining() > mark) {
+                write(encoded.array(), encoded.arrayOffset() + encoded.position() + mark, encoded.remaining() - mark);
+            }
+        } catch (CharacterCodingException e) {
+            //Cannot happen as errors are replaced
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel and empties it.
+     */
+    private void drain() {
+        buffer.clear().limit(count);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        drained += count;
+        //Output rendered in memory is counted when it is written to its real output
+        if (!rendered && AlignStats.isEnabled()) {
+            AlignStats.count(AlignStats.Counter.BYTES_OUT, count);
+        }
+        count = 0;
+    }
+
+    /**
+     * Writes any buffered output to the channel.
+     */
+    @Override
+    public void flush() {
+        drain();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    /**
+     * Flushes the buffered output and closes the channel, standard output is flushed but left open.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (stream == null) {
+            channel.close();
+        }
+    }
+}
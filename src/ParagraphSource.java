@@ -0,0 +1,89 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ *
+ * A source of paragraphs that are handed out one at a time, so that the whole file never has to be held in memory.
+ * A paragraph is a line of text without its line terminator, the same as the entries of the array returned by FileUtil.readFile.
+ *
+ * @author Malak Sadek
+ *
+ */
+public interface ParagraphSource extends Closeable {
+
+    /**
+     * Reads the next paragraph from the source.
+     * @return Returns the next paragraph, or null once the end of the source has been reached.
+     * @throws IOException if the underlying input could not be read
+     */
+    String nextParagraph() throws IOException;
+
+    /**
+     * Reads the next paragraph to be kept after later calls, like nextParagraph, but as a CharSequence so that a source whose paragraphs
+     * are already split into words (see TokenParagraphSource) can hand out the Tokens instead of copying them into a String.
+     * Unlike nextText, the paragraph is always whole and is not reused, so it can be handed to other threads. By default it is the same as nextParagraph.
+     * @return Returns the next paragraph, or null once the end of the source has been reached.
+     * @throws IOException if the underlying input could not be read
+     */
+    default CharSequence nextParagraphText() throws IOException {
+        return nextParagraph();
+    }
+
+    /**
+     * Reads the next paragraph to be kept after later calls, like nextParagraphText, unless it is too long for the source to hand out whole:
+     * then only its first window is returned, the same as nextText, and the rest of it is read with moreText (see isComplete).
+     * By default a complete paragraph returned by nextText is copied into a String.
+     * @return Returns the next paragraph or its first window, or null once the end of the source has been reached.
+     * @throws IOException if the underlying input could not be read
+     */
+    default CharSequence nextBoundedText() throws IOException {
+        CharSequence text = nextText();
+        return text != null && isComplete() ? text.toString() : text;
+    }
+
+    /**
+     * Reads the next paragraph as a CharSequence, which lets a source hand out a view of its input instead of decoding it into a String.
+     * The returned text may be reused by the next call, so it is only valid until then. By default it is the same as nextParagraph.
+     * A source may also return only the beginning of a very long paragraph, see isComplete and moreText.
+     * @return Returns the next paragraph, or null once the end of the source has been reached.
+     * @throws IOException if the underlying input could not be read
+     */
+    default CharSequence nextText() throws IOException {
+        return nextParagraph();
+    }
+
+    /**
+     * Checks whether the text returned by the last call to nextText or moreText reaches the end of its paragraph.
+     * Sources that hand out very long paragraphs one window at a time return false until the last window, by default it is always true.
+     */
+    default boolean isComplete() {
+        return true;
+    }
+
+    /**
+     * Continues a paragraph that was not complete, dropping the first consumed characters of the last window.
+     * Only called when isComplete returns false.
+     * @return Returns the next window of the paragraph, starting after the consumed characters.
+     * @throws IOException if the underlying input could not be read
+     */
+    default CharSequence moreText(int consumed) throws IOException {
+        throw new UnsupportedOperationException("Paragraphs are always complete");
+    }
+
+    /**
+     * Gives where the next paragraph starts in the file, as a byte offset that can be given to seek.
+     * Only sources that read a file by memory-mapping it (MappedParagraphSource and TokenParagraphSource) can do this.
+     */
+    default long position() {
+        throw new UnsupportedOperationException("Paragraphs cannot be sought");
+    }
+
+    /**
+     * Continues reading from a paragraph somewhere else in the file, so that part of a file can be read without reading everything before it.
+     * @param position where the paragraph starts, as returned by position
+     * @throws IOException if the file could not be mapped
+     */
+    default void seek(long position) throws IOException {
+        throw new UnsupportedOperationException("Paragraphs cannot be sought");
+    }
+}
@@ -0,0 +1,127 @@
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * Aligns the paragraphs of a file on several threads. The paragraphs are divided into chunks of roughly equal size,
+ * each chunk is split and padded into its own buffer on a ForkJoinPool, and the buffers are then written out in the
+ * original order, so the output is identical to aligning the paragraphs on a single thread.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class ParallelAligner {
+
+    /**
+     * Number of characters of text that are aligned together as one chunk.
+     */
+    public static final int CHUNK_SIZE = 1 << 16;
+
+    private Align align;
+    private ForkJoinPool pool;
+
+    /**
+     * Constructor.
+     * @param align the alignment object used to split and pad every chunk (only its read-only methods are used by the threads)
+     * @param threads number of threads to align with
+     */
+    ParallelAligner(Align align, int threads) {
+        this.align = align;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Aligns the paragraphs on the pool and writes them to the alignment's output in their original order.
+     * @param paragraphs contains the paragraphs of text found inside the supplied file
+     */
+    void print(String[] paragraphs) {
+        OutputSink out = align.getOutput();
+        Charset charset = out.getCharset();
+        int[] bounds = chunk(paragraphs);
+        byte[][] results = new byte[bounds.length - 1][];
+        if (results.length == 0) {
+            return;
+        }
+        pool.invoke(new AlignTask(align, paragraphs, bounds, results, charset, 0, results.length));
+
+        for (byte[] result : results) {
+            out.write(result, 0, result.length);
+        }
+        out.flush();
+    }
+
+    /**
+     * Stops the pool's threads once they are no longer needed.
+     */
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Divides the paragraphs into chunks of at least CHUNK_SIZE characters (apart from the last one).
+     * @return Returns the index of the first paragraph of each chunk, followed by paragraphs.length.
+     */
+    static int[] chunk(CharSequence[] paragraphs) {
+        int[] bounds = new int[paragraphs.length + 1];
+        int count = 0, size = 0;
+        for (int i = 0; i < paragraphs.length; i++) {
+            if (size == 0) {
+                bounds[count++] = i;
+            }
+            //Each paragraph also ends with a new line
+            size += paragraphs[i].length() + 1;
+            if (size >= CHUNK_SIZE) {
+                size = 0;
+            }
+        }
+        bounds[count] = paragraphs.length;
+        int[] trimmed = new int[count + 1];
+        System.arraycopy(bounds, 0, trimmed, 0, count + 1);
+        return trimmed;
+    }
+
+    /**
+     * Fork-join task that aligns a range of chunks, it keeps dividing the range in half until it is left with a single chunk.
+     * BatchAligner also forks it from inside its own pool to split up large files.
+     */
+    static class AlignTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient Align align;
+        private CharSequence[] paragraphs;
+        private int[] bounds;
+        private byte[][] results;
+        private Charset charset;
+        private int from;
+        private int to;
+
+        /**
+         * Constructor, the task aligns chunks from index from up to to and stores them in results.
+         */
+        AlignTask(Align align, CharSequence[] paragraphs, int[] bounds, byte[][] results, Charset charset, int from, int to) {
+            this.align = align;
+            this.paragraphs = paragraphs;
+            this.bounds = bounds;
+            this.results = results;
+            this.charset = charset;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Aligns a single chunk, or forks two tasks that each align half of the range.
+         */
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = align.render(paragraphs, bounds[from], bounds[from + 1], charset);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new AlignTask(align, paragraphs, bounds, results, charset, from, middle),
+                        new AlignTask(align, paragraphs, bounds, results, charset, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ *
+ * Line breaker used by the hyphenated alignments when hyphenation patterns are loaded (see Hyphenator).
+ * Instead of always splitting a word that crosses the line length at "line length - 1" characters like HyphenLineBreaker,
+ * it hyphenates the word at the last point the patterns allow, wraps the word to the next line if it cannot be hyphenated,
+ * and only cuts it at "line length - 1" when the word is longer than a whole line and has no point that fits.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class PatternLineBreaker extends LineBreaker {
+
+    private Hyphenator hyphenator;
+
+    /**
+     * Constructor.
+     * @param hyphenator finds the points where words may be hyphenated
+     */
+    PatternLineBreaker(Hyphenator hyphenator) {
+        this.hyphenator = hyphenator;
+    }
+
+    /**
+     * Splits and hyphenates the paragraph, start marks the beginning of the part of the paragraph that has not been split yet.
+     * Paragraphs and remainders that fit on a line are handled the same way as HyphenLineBreaker handles them.
+     */
+    @Override
+    int breakLines(Tokens tokens, int limit, LineSink sink, boolean continued, boolean complete) {
+        CharSequence text = tokens.text();
+        int length = text.length();
+        int start = 0, space = 0;
+        if (finish(tokens, limit, sink, continued, complete)) {
+            return length;
+        }
+
+        while (tokens.width(start, length) > limit) {
+            int fit = tokens.isAscii() ? start + limit : DisplayWidth.fit(text, start, length, limit);
+
+            //The limit falls on a space, no need to hyphenate, so we just split the line and move past it
+            if (text.charAt(fit) == ' ') {
+                sink.line(text, start, fit, false);
+                start = fit + 1;
+            } else {
+                //Finds the word that crosses the limit, which is between the last space before fit and the first one after it
+                space = tokens.next(fit, space);
+                int word_start = space == 0 ? start : Math.max(start, tokens.space(space - 1) + 1);
+                int word_end = tokens.space(space);
+                if (word_end == -1) {
+                    if (!complete) {
+                        //The word may continue after the window, so the line is split once more of the paragraph has been read
+                        return start;
+                    }
+                    word_end = length;
+                }
+
+                //The hyphen takes up one column, so the part of the word that stays on the line has to fit in the rest of the line but one column
+                int rest = limit - tokens.width(start, word_start) - 1;
+                int max = tokens.isAscii() || rest <= 0 ? rest : DisplayWidth.fit(text, word_start, fit, rest) - word_start;
+                int point = hyphenator.lastBreak(text, word_start, word_end, max);
+                if (point > 0) {
+                    sink.line(text, start, word_start + point, true);
+                    start = word_start + point;
+                } else if (word_start - 1 > start) {
+                    //The word cannot be hyphenated to fit, so it is wrapped to the next line
+                    sink.line(text, start, word_start - 1, false);
+                    start = word_start;
+                } else {
+                    //The word is longer than a whole line, so it is split at "limit - 1" with a hyphen
+                    int cut = tokens.isAscii() ? start + Math.max(1, limit - 1) : DisplayWidth.cut(text, start, length, limit - 1);
+                    sink.line(text, start, cut, true);
+                    start = cut;
+                }
+            }
+
+            //If the remaining words are less than the limit, then we just add all of them and continue to the next paragraph
+            if (tokens.width(start, length) < limit && complete) {
+                sink.line(text, start, length, false);
+            }
+        }
+        return complete ? length : start;
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ *
+ * Paragraph source backed by a Reader, it splits the input into paragraphs the same way FileUtil.readFile does (the same line terminators as readLine).
+ * The input is read into a window of WINDOW_SIZE characters, and a paragraph that does not fit in the window is handed out
+ * one window at a time through nextText and moreText, so only the part of the paragraph that has not been split yet is kept in memory.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class ReaderParagraphSource implements ParagraphSource {
+
+    /**
+     * Number of characters of input that are held at once, unless a single line or word needs more.
+     */
+    public static final int WINDOW_SIZE = 1 << 16;
+
+    private Reader reader;
+    private char[] buffer = new char[WINDOW_SIZE];
+    //The current paragraph starts at position, characters up to scanned have been checked for line terminators and up to filled have been read
+    private int position;
+    private int scanned;
+    private int filled;
+    private int end = -1;
+    private boolean eof;
+    private boolean skip_lf;
+    private boolean complete = true;
+    private boolean partial;
+
+    /**
+     * Constructor.
+     */
+    ReaderParagraphSource(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next paragraph as a String, however long it is.
+     * @return Returns the next paragraph, or null at the end of the input.
+     */
+    @Override
+    public String nextParagraph() throws IOException {
+        CharSequence text = nextText();
+        if (text == null || complete) {
+            return text == null ? null : text.toString();
+        }
+        StringBuilder paragraph = new StringBuilder(text);
+        while (!complete) {
+            text = moreText(text.length());
+            paragraph.append(text);
+        }
+        return paragraph.toString();
+    }
+
+    /**
+     * Reads the next paragraph, or only its first window if it does not fit (see isComplete).
+     * @return Returns a view of the window, which is only valid until the next call, or null at the end of the input.
+     */
+    @Override
+    public CharSequence nextText() throws IOException {
+        //Moves past the line terminator of the previous paragraph, the '\n' of a "\r\n" is skipped once it has been read
+        if (end >= 0) {
+            skip_lf = buffer[end] == '\r';
+            position = end + 1;
+            scanned = position;
+            end = -1;
+        }
+        partial = false;
+        return find();
+    }
+
+    /**
+     * Checks whether the text returned by the last call to nextText or moreText reaches the end of its paragraph.
+     */
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Drops the characters of the current window that have been split off and reads more of the paragraph.
+     * If nothing could be dropped the window grows, as a line or word that does not fit has to be kept whole.
+     * @param consumed number of characters at the start of the window that are no longer needed
+     * @return Returns a view of the new window, which starts after the consumed characters.
+     */
+    @Override
+    public CharSequence moreText(int consumed) throws IOException {
+        position += consumed;
+        partial = true;
+        if (position == 0 && filled == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        return find();
+    }
+
+    /**
+     * Looks for the end of the current paragraph, reading more input until it is found, the window is full or the input ends.
+     */
+    private CharSequence find() throws IOException {
+        while (true) {
+            if (skip_lf && position < filled) {
+                skip_lf = false;
+                if (buffer[position] == '\n') {
+                    position++;
+                    scanned = Math.max(scanned, position);
+                }
+            }
+            for (; scanned < filled; scanned++) {
+                char c = buffer[scanned];
+                if (c == '\n' || c == '\r') {
+                    end = scanned;
+                    complete = true;
+                    return CharBuffer.wrap(buffer, position, scanned - position);
+                }
+            }
+            if (eof) {
+                //The text after the last line terminator is a paragraph too, unless there is none
+                complete = true;
+                if (position == filled && !partial) {
+                    return null;
+                }
+                CharSequence text = CharBuffer.wrap(buffer, position, filled - position);
+                position = filled;
+                scanned = filled;
+                return text;
+            }
+            if (filled == buffer.length) {
+                if (position == 0) {
+                    //The window is full without reaching the end of the paragraph
+                    complete = false;
+                    return CharBuffer.wrap(buffer, 0, filled);
+                }
+                System.arraycopy(buffer, position, buffer, 0, filled - position);
+                filled -= position;
+                scanned -= position;
+                position = 0;
+            }
+            int read = reader.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                eof = true;
+            } else {
+                filled += read;
+            }
+        }
+    }
+
+    /**
+     * Closes the underlying reader.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -1,4 +1,3 @@
-import java.util.ArrayList;
 /**
  *
  * Specialized alignment class for right alignment, it inherits from the general alignment abstract class.
@@ -16,14 +15,12 @@ public class RightAlign extends Align {
     }
 
     /**
-     * RightAligns's implementation of the abstract print method.
-     * @param lines contains the lines of text that have been split according to the line length
-     * padSpaces is called before printing to create the right alignment
+     * RightAlign's implementation of the abstract spacesBefore method.
+     * @return Returns the same number of spaces that padSpaces adds before the line to create the right alignment
      */
-    void print(ArrayList<String> lines) {
-        for (String line : lines) {
-            System.out.print(padSpaces(line) + "\n");
-        }
+    @Override
+    int spacesBefore(int length) {
+        return Math.max(0, this.getLimit() - length);
     }
 
     /**
@@ -38,7 +35,15 @@ public class RightAlign extends Align {
 
         //Calculates the maximum of zero or the remaining spaces between the maximum line length and current line length
         //and then pads the line with that number of spaces
-        return " ".repeat(Math.max(0, this.getLimit() - line.length()))
+        return " ".repeat(Math.max(0, this.getLimit() - DisplayWidth.width(line)))
         + line;
     }
+
+    /**
+     * RightAlign's implementation of the abstract getMode method.
+     */
+    @Override
+    String getMode() {
+        return "R";
+    }
 }
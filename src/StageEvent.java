@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *
+ * Flight recorder event for one stage of aligning a file (reading it, splitting it into lines, or padding and writing the lines)
+ * or for aligning a chunk of it on another thread. Its duration is the time the stage took.
+ *
+ * @author Malak Sadek
+ *
+ */
+@Name("textalignment.Stage")
+@Label("Alignment Stage")
+@Category("Text Alignment")
+@Description("A stage of aligning a file")
+public class StageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    //The write stage is given lines that have already been split, so it has no paragraphs
+    @Label("Paragraphs")
+    long paragraphs;
+
+    /**
+     * Constructor.
+     * @param stage the name of the stage: read, wrap, write, stream, render, index or lines
+     */
+    StageEvent(String stage) {
+        this.stage = stage;
+    }
+}
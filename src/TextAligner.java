@@ -0,0 +1,344 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ *
+ * Library entry point for aligning text from other programs without starting AlignText.
+ * A TextAligner is immutable, so one instance can be created for each (line length, alignment, hyphenation, patterns) and shared by
+ * any number of threads. It aligns a CharSequence into a String, a Reader into a Writer, or a stream of paragraphs into a
+ * stream of lines, and the output is the same as AlignText's. Invalid settings and I/O problems are reported with exceptions
+ * instead of printing a usage message and exiting.
+ * Hyphenation patterns loaded with Hyphenator.load can be given to choose where words are hyphenated, the same as AlignText's '--patterns'.
+ *
+ * @author Malak Sadek
+ *
+ */
+public final class TextAligner {
+
+    /**
+     * The alignments that a TextAligner can use, each of them but JUSTIFY can be combined with hyphenation.
+     */
+    public enum Alignment {
+        LEFT("L"), RIGHT("R"), CENTER("C"), JUSTIFY("J");
+
+        private final String code;
+
+        Alignment(String code) {
+            this.code = code;
+        }
+    }
+
+    /**
+     * Spaces that padding is copied from.
+     */
+    private static final char[] SPACES = new char[256];
+
+    static {
+        Arrays.fill(SPACES, ' ');
+    }
+
+    private final int limit;
+    private final Alignment alignment;
+    private final boolean hyphenate;
+    private final Hyphenator hyphenator;
+    private final Align align;
+
+    /**
+     * Constructor, use create or forMode.
+     */
+    private TextAligner(int limit, Alignment alignment, boolean hyphenate, Hyphenator hyphenator, Align align) {
+        this.limit = limit;
+        this.alignment = alignment;
+        this.hyphenate = hyphenate;
+        this.hyphenator = hyphenator;
+        this.align = align;
+    }
+
+    /**
+     * Creates an aligner.
+     * @param limit the line length, must be positive
+     * @param alignment how the lines are aligned
+     * @param hyphenate whether words that cross the line length are hyphenated instead of wrapped
+     * @throws IllegalArgumentException if limit is not positive, or if JUSTIFY is combined with hyphenation
+     */
+    public static TextAligner create(int limit, Alignment alignment, boolean hyphenate) {
+        return create(limit, alignment, hyphenate, null);
+    }
+
+    /**
+     * Creates an aligner that hyphenates words at the points allowed by hyphenation patterns.
+     * @param hyphenator the patterns, used when hyphenate is true and by JUSTIFY (as extra places to break lines), or null for the default hyphenation
+     * @throws IllegalArgumentException if limit is not positive, or if JUSTIFY is combined with hyphenation
+     */
+    public static TextAligner create(int limit, Alignment alignment, boolean hyphenate, Hyphenator hyphenator) {
+        if (hyphenate && alignment == Alignment.JUSTIFY) {
+            throw new IllegalArgumentException("Justified text cannot be combined with hyphenation");
+        }
+        String mode = hyphenate ? "H" + alignment.code : alignment.code;
+        return new TextAligner(limit, alignment, hyphenate, hyphenator, createAlign(limit, mode, hyphenator));
+    }
+
+    /**
+     * Creates an aligner from one of AlignText's align_mode values (L, R, C, J, H, LH, RH or CH).
+     * @throws IllegalArgumentException if limit is not positive or align_mode is not valid
+     */
+    public static TextAligner forMode(int limit, String align_mode) {
+        return forMode(limit, align_mode, null);
+    }
+
+    /**
+     * Creates an aligner from one of AlignText's align_mode values that hyphenates words at the points allowed by hyphenation patterns.
+     * @param hyphenator the patterns, used by the hyphenated modes and by J, or null for the default hyphenation
+     * @throws IllegalArgumentException if limit is not positive or align_mode is not valid
+     */
+    public static TextAligner forMode(int limit, String align_mode, Hyphenator hyphenator) {
+        Align align = createAlign(limit, align_mode, hyphenator);
+        boolean hyphenate = align instanceof HyphenateAlign;
+        Alignment alignment = Alignment.LEFT;
+        for (Alignment value : Alignment.values()) {
+            if (align_mode.contains(value.code)) {
+                alignment = value;
+            }
+        }
+        return new TextAligner(limit, alignment, hyphenate, hyphenator, align);
+    }
+
+    /**
+     * Creates the alignment object that does the work, it is never given a file and its output sink is never used.
+     */
+    private static Align createAlign(int limit, String align_mode, Hyphenator hyphenator) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Line length must be positive: " + limit);
+        }
+        Align align = AlignText.createAlign("", limit, align_mode, hyphenator);
+        if (align == null) {
+            throw new IllegalArgumentException("Unknown align mode: " + align_mode);
+        }
+        return align;
+    }
+
+    /**
+     * Getter for the line length.
+     * @return limit (line length).
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Getter for the alignment.
+     * @return alignment (left, right, center or justify).
+     */
+    public Alignment getAlignment() {
+        return alignment;
+    }
+
+    /**
+     * Getter for whether words are hyphenated.
+     * @return hyphenate (true for the hyphenated modes).
+     */
+    public boolean isHyphenated() {
+        return hyphenate;
+    }
+
+    /**
+     * Getter for the hyphenation patterns.
+     * @return hyphenator (null when the default hyphenation is used).
+     */
+    public Hyphenator getHyphenator() {
+        return hyphenator;
+    }
+
+    /**
+     * Starts or stops measuring the counters and stage times of every aligner in the process, see metrics.
+     * Measuring adds a little work for every line, so it is off until it is started.
+     */
+    public static void setMetricsEnabled(boolean enabled) {
+        AlignStats.setEnabled(enabled);
+    }
+
+    /**
+     * Takes a snapshot of what has been measured since setMetricsEnabled(true): the time spent reading, wrapping, padding and writing,
+     * and the numbers of paragraphs, lines, hyphenations, words longer than a line, bytes in and out and bytes allocated.
+     */
+    public static AlignStats.Snapshot metrics() {
+        return AlignStats.snapshot();
+    }
+
+    /**
+     * Aligns text, which is split into paragraphs at line terminators the same way as a file.
+     * @return Returns the aligned text, every line ends with a new line.
+     */
+    public String align(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length() + text.length() / 4);
+        try (BufferedReader in = new BufferedReader(new StringReader(text.toString()))) {
+            String paragraph;
+            while ((paragraph = in.readLine()) != null) {
+                alignParagraph(paragraph, out);
+            }
+        } catch (IOException e) {
+            //A StringReader and StringBuilder never throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Aligns everything read from in and writes it to out, one paragraph at a time. Neither of them is closed.
+     * Very long paragraphs are read and split one window at a time (see ReaderParagraphSource), so they are never held in memory whole.
+     * @throws IOException if in cannot be read or out cannot be written
+     */
+    public void align(Reader in, Writer out) throws IOException {
+        ParagraphSource source = new ReaderParagraphSource(in);
+        CharSequence text;
+        while ((text = source.nextText()) != null) {
+            alignParagraph(source, text, out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Aligns a stream of paragraphs lazily, each paragraph is split when the resulting stream reaches it.
+     * @return Returns a stream of the aligned lines, without new lines.
+     */
+    public Stream<String> alignParagraphs(Stream<? extends CharSequence> paragraphs) {
+        return paragraphs.flatMap(paragraph -> lines(paragraph).stream());
+    }
+
+    /**
+     * Splits and pads a single paragraph.
+     * @return Returns the aligned lines of the paragraph, without new lines.
+     */
+    public ArrayList<String> lines(CharSequence paragraph) {
+        ArrayList<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder(limit + 1);
+        breakLines(paragraph, (text, start, end, hyphen) -> {
+            line.setLength(0);
+            try {
+                writeLine(line, text, start, end, hyphen, false);
+            } catch (IOException e) {
+                //A StringBuilder never throws
+                throw new UncheckedIOException(e);
+            }
+            lines.add(line.toString());
+        });
+        return lines;
+    }
+
+    /**
+     * Splits a single paragraph and appends its aligned lines, each followed by a new line.
+     */
+    public void alignParagraph(CharSequence paragraph, Appendable out) throws IOException {
+        try {
+            breakLines(paragraph, (text, start, end, hyphen) -> {
+                try {
+                    writeLine(out, text, start, end, hyphen, true);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Splits a whole paragraph, counting it and timing the line breaker when metrics are enabled.
+     */
+    private void breakLines(CharSequence paragraph, LineSink sink) {
+        if (AlignStats.isEnabled()) {
+            AlignStats.count(AlignStats.Counter.PARAGRAPHS, 1);
+            long start = System.nanoTime(), nested = AlignStats.nested();
+            align.getLineBreaker().breakLines(paragraph, limit, AlignStats.counting(sink, limit));
+            AlignStats.wrapped(start, nested);
+            return;
+        }
+        align.getLineBreaker().breakLines(paragraph, limit, sink);
+    }
+
+    /**
+     * Splits a paragraph that source may hand out in windows, the same as Align.writeParagraph does for an OutputSink.
+     */
+    private void alignParagraph(ParagraphSource source, CharSequence text, Writer out) throws IOException {
+        LineSink sink = (line, start, end, hyphen) -> {
+            try {
+                writeLine(out, line, start, end, hyphen, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        boolean measured = AlignStats.isEnabled();
+        if (measured) {
+            AlignStats.count(AlignStats.Counter.PARAGRAPHS, 1);
+            sink = AlignStats.counting(sink, limit);
+        }
+        try {
+            boolean continued = false;
+            while (!source.isComplete()) {
+                long start = System.nanoTime(), nested = measured ? AlignStats.nested() : 0;
+                int consumed = align.getLineBreaker().breakLines(text, limit, sink, continued, false);
+                if (measured) {
+                    AlignStats.wrapped(start, nested);
+                }
+                continued |= consumed > 0;
+                text = AlignStats.moreText(source, consumed);
+            }
+            long start = System.nanoTime(), nested = measured ? AlignStats.nested() : 0;
+            align.getLineBreaker().breakLines(text, limit, sink, continued, true);
+            if (measured) {
+                AlignStats.wrapped(start, nested);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Appends a line with the alignment's padding, the same as Align.writeLine does for an OutputSink.
+     */
+    private void writeLine(Appendable out, CharSequence text, int start, int end, boolean hyphen, boolean newline) throws IOException {
+        boolean measured = AlignStats.isEnabled();
+        long begin = measured ? System.nanoTime() : 0;
+        int length = DisplayWidth.width(text, start, end) + (hyphen ? 1 : 0);
+        pad(out, align.spacesBefore(length));
+        long padded = measured ? System.nanoTime() : 0;
+        out.append(text, start, end);
+        if (hyphen) {
+            out.append('-');
+        }
+        long written = measured ? System.nanoTime() : 0;
+        pad(out, align.spacesAfter(length));
+        if (newline) {
+            out.append('\n');
+        }
+        if (measured) {
+            AlignStats.line(padded - begin + System.nanoTime() - written, written - padded);
+        }
+    }
+
+    /**
+     * Appends spaces copied from the preallocated block.
+     */
+    private static void pad(Appendable out, int spaces) throws IOException {
+        while (spaces > 0) {
+            int chunk = Math.min(spaces, SPACES.length);
+            if (out instanceof Writer) {
+                ((Writer) out).write(SPACES, 0, chunk);
+            } else if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(SPACES, 0, chunk);
+            } else {
+                for (int i = 0; i < chunk; i++) {
+                    out.append(' ');
+                }
+            }
+            spaces -= chunk;
+        }
+    }
+}
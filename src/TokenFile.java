@@ -0,0 +1,187 @@
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * Compact binary format for text that has already been decoded and split into words, so that a corpus which is aligned many times
+ * with different settings only has to be decoded and searched for spaces once. A tokens file is aligned like any other file,
+ * it is recognised by its first bytes and read by a TokenParagraphSource, which memory-maps it and hands out each paragraph as Tokens.
+ *
+ * The file starts with MAGIC and VERSION (a big-endian int), followed by one record per paragraph.
+ * The numbers in a record are varints, 7 bits per byte with the lowest bits first and the top bit set on every byte but the last:
+ *
+ *   size                            the number of bytes of the record after its size
+ *   length, flags, spaces, bytes    the number of characters, the flags (see ASCII and WIDE), the number of spaces and the number of bytes of text
+ *   spaces varints                  the length of every word before a space, so space k is at the sum of the first k + 1 lengths plus k
+ *   bytes bytes                     the text encoded in UTF-8, which for an ASCII paragraph is one byte per character
+ *   widths                          unless the paragraph is ASCII, the number of columns each character adds (see DisplayWidth.columns),
+ *                                   packed 2 bits per character with 4 characters to a byte, or one byte per character if WIDE is set
+ *
+ * So a tokens file takes up little more than the UTF-8 text itself, a byte for most words and a quarter of a byte per character that is not ASCII.
+ *
+ * @author Malak Sadek
+ *
+ */
+public final class TokenFile {
+
+    /**
+     * The first bytes of every tokens file.
+     */
+    static final byte[] MAGIC = "ALIGNTOK".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Version of the format, it has to be changed whenever the format changes so old files are not misread.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * Number of bytes before the first record.
+     */
+    static final int HEADER_SIZE = 12;
+
+    /**
+     * Flag of a paragraph whose characters are all ASCII, which are stored as one byte each.
+     */
+    static final int ASCII = 1;
+
+    /**
+     * Flag of a paragraph with a character that adds more than 3 columns, whose widths are then stored as one byte each.
+     */
+    static final int WIDE = 2;
+
+    /**
+     * Largest number of bytes a varint takes up.
+     */
+    static final int VARINT_SIZE = 5;
+
+    /**
+     * Constructor, the class only has static methods.
+     */
+    private TokenFile() {
+    }
+
+    /**
+     * Checks whether a file is a tokens file by reading its first bytes.
+     * @return Returns false if it is not, or if it cannot be read.
+     */
+    static boolean isTokenFile(String filename) {
+        try (InputStream in = new FileInputStream(filename)) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            return Arrays.equals(magic, MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gives the number of bytes the widths of a paragraph that is not ASCII take up.
+     */
+    static int widthsSize(int length, int flags) {
+        return (flags & WIDE) != 0 ? length : (length + 3) >>> 2;
+    }
+
+    /**
+     * Gives the number of bytes a varint takes up.
+     */
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Adds a varint to a buffer.
+     */
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Splits every paragraph of source into words and writes them to a new tokens file, replacing it if it exists.
+     * @param source the paragraphs, already decoded with the charset of the text
+     * @param filename where the tokens file is written
+     * @return Returns the number of paragraphs written.
+     * @throws IOException if source cannot be read or the file cannot be written
+     */
+    static long write(ParagraphSource source, String filename) throws IOException {
+        long paragraphs = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), OutputSink.BUFFER_SIZE)) {
+            ByteBuffer record = ByteBuffer.allocate(1 << 12);
+            record.put(MAGIC).putInt(VERSION);
+            out.write(record.array(), 0, record.position());
+            String paragraph;
+            while ((paragraph = AlignStats.nextParagraph(source)) != null) {
+                Tokens tokens = Tokens.of(paragraph);
+                int length = paragraph.length();
+                int spaces = tokens.spaceCount();
+                int flags = tokens.isAscii() ? ASCII : 0;
+                for (int i = 0; flags == 0 && i < length; i++) {
+                    if (tokens.width(i, i + 1) > 3) {
+                        flags = WIDE;
+                    }
+                }
+                //Characters that UTF-8 cannot encode (unpaired surrogates) are reported instead of being stored as something else
+                ByteBuffer text = tokens.isAscii() ? ByteBuffer.wrap(paragraph.getBytes(StandardCharsets.US_ASCII))
+                        : StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(paragraph));
+                int bytes = text.remaining();
+
+                long body = varintSize(length) + varintSize(flags) + varintSize(spaces) + varintSize(bytes) + (long) bytes
+                        + (tokens.isAscii() ? 0 : widthsSize(length, flags));
+                for (int k = 0, word_start = 0; k < spaces; k++) {
+                    body += varintSize(tokens.space(k) - word_start);
+                    word_start = tokens.space(k) + 1;
+                }
+                if (body + VARINT_SIZE > Integer.MAX_VALUE) {
+                    throw new IOException("Paragraph too long for a tokens file: " + length + " characters");
+                }
+
+                //Each record is put together in a buffer first and then written with a single call
+                int size = varintSize((int) body) + (int) body;
+                if (size > record.capacity()) {
+                    record = ByteBuffer.allocate(size);
+                }
+                record.clear();
+                putVarint(record, (int) body);
+                putVarint(record, length);
+                putVarint(record, flags);
+                putVarint(record, spaces);
+                putVarint(record, bytes);
+                for (int k = 0, word_start = 0; k < spaces; k++) {
+                    putVarint(record, tokens.space(k) - word_start);
+                    word_start = tokens.space(k) + 1;
+                }
+                record.put(text);
+                if ((flags & WIDE) != 0) {
+                    for (int i = 0; i < length; i++) {
+                        record.put((byte) tokens.width(i, i + 1));
+                    }
+                } else if (!tokens.isAscii()) {
+                    for (int i = 0; i < length; i += 4) {
+                        int packed = 0;
+                        for (int k = 0; k < 4 && i + k < length; k++) {
+                            packed |= tokens.width(i + k, i + k + 1) << (2 * k);
+                        }
+                        record.put((byte) packed);
+                    }
+                }
+                out.write(record.array(), 0, size);
+                paragraphs++;
+            }
+        }
+        return paragraphs;
+    }
+}
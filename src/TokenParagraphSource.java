@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * Paragraph source that reads a tokens file (see TokenFile) by memory-mapping it.
+ * Every paragraph is handed out as Tokens built straight from its record: ASCII paragraphs are views of the mapped bytes (see AsciiText),
+ * other paragraphs are decoded from UTF-8, and the indexes of the spaces and the columns of the characters are added up from the lengths
+ * and widths in the file, so nothing is searched again.
+ * The file is mapped one window at a time like MappedParagraphSource, so files larger than 2GB can be read as long as each record fits in a window.
+ * The Tokens are complete and are not reused, so they can be kept and shared between threads.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class TokenParagraphSource implements ParagraphSource {
+
+    /**
+     * Size of the part of the file that is mapped at once.
+     */
+    public static final int WINDOW_SIZE = 1 << 28;
+
+    private FileChannel channel;
+    private long size;
+    private MappedByteBuffer window;
+    private long window_start;
+    private long position;
+    //Index in the window of the next byte of the record being read, and of the end of the record
+    private int cursor;
+    private int limit;
+
+    /**
+     * Constructor, opens and maps the start of the file and checks that it is a tokens file of the current version.
+     * @param filename of the file to read
+     * @throws java.io.FileNotFoundException if the file cannot be opened (the same as FileReader)
+     * @throws IOException if the file is not a tokens file
+     */
+    TokenParagraphSource(String filename) throws IOException {
+        this.channel = new RandomAccessFile(filename, "r").getChannel();
+        this.size = channel.size();
+        map(0, WINDOW_SIZE);
+        byte[] magic = new byte[TokenFile.MAGIC.length];
+        if (size >= TokenFile.HEADER_SIZE) {
+            window.get(0, magic);
+        }
+        if (!Arrays.equals(magic, TokenFile.MAGIC)) {
+            channel.close();
+            throw new IOException("Not a tokens file: " + filename);
+        }
+        if (window.getInt(TokenFile.MAGIC.length) != TokenFile.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported tokens file version: " + filename);
+        }
+        this.position = TokenFile.HEADER_SIZE;
+    }
+
+    /**
+     * Reads the next paragraph as a String, which copies its characters, see nextText.
+     * @return Returns the next paragraph, or null at the end of the file.
+     */
+    @Override
+    public String nextParagraph() throws IOException {
+        Tokens tokens = nextText();
+        return tokens == null ? null : tokens.toString();
+    }
+
+    /**
+     * Reads the next paragraph as Tokens, which is not reused by later calls.
+     * @return Returns the next paragraph, or null at the end of the file.
+     */
+    @Override
+    public Tokens nextText() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        //The size of the record comes first, so that the whole record can be mapped before the rest of it is read
+        ensure(Math.min(TokenFile.VARINT_SIZE, size - position));
+        cursor = (int) (position - window_start);
+        limit = window.limit();
+        int body = varint();
+        int header = cursor - (int) (position - window_start);
+        long record = header + (long) body;
+        ensure(record);
+        cursor = (int) (position - window_start) + header;
+        limit = cursor + body;
+
+        int length = varint();
+        int flags = varint();
+        int count = varint();
+        int bytes = varint();
+        if (length < 0 || count < 0 || count > length || bytes < length || bytes < 0) {
+            throw corrupt();
+        }
+        int[] spaces = new int[count];
+        for (int k = 0, index = -1; k < count; k++) {
+            index += varint() + 1;
+            if (index < 0 || index >= length) {
+                throw corrupt();
+            }
+            spaces[k] = index;
+        }
+        int text_start = cursor;
+        boolean ascii = (flags & TokenFile.ASCII) != 0;
+        if ((long) text_start + bytes + (ascii ? 0 : TokenFile.widthsSize(length, flags)) > limit || ascii && bytes != length) {
+            throw corrupt();
+        }
+        Tokens tokens;
+        if (ascii) {
+            tokens = new Tokens(new AsciiText(window, text_start, length), spaces, count, null);
+        } else {
+            byte[] utf8 = new byte[bytes];
+            window.get(text_start, utf8);
+            String text = new String(utf8, StandardCharsets.UTF_8);
+            if (text.length() != length) {
+                throw corrupt();
+            }
+            //The columns are added up from the width of each character
+            int[] columns = new int[length + 1];
+            int widths = text_start + bytes;
+            if ((flags & TokenFile.WIDE) != 0) {
+                for (int i = 0; i < length; i++) {
+                    columns[i + 1] = columns[i] + window.get(widths + i);
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    columns[i + 1] = columns[i] + (window.get(widths + (i >>> 2)) >>> (2 * (i & 3)) & 3);
+                }
+            }
+            tokens = new Tokens(text, spaces, count, columns);
+        }
+        position += record;
+        return tokens;
+    }
+
+    /**
+     * Reads a varint (see TokenFile) at cursor and moves cursor past it.
+     * @throws IOException if it runs past the end of the record or is too long
+     */
+    private int varint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * TokenFile.VARINT_SIZE; shift += 7) {
+            if (cursor >= limit) {
+                throw corrupt();
+            }
+            byte b = window.get(cursor++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw corrupt();
+    }
+
+    /**
+     * Creates the exception for a record that cannot be read.
+     */
+    private IOException corrupt() {
+        return new IOException("Corrupt tokens file at offset " + position);
+    }
+
+    /**
+     * The Tokens handed out by nextText are not reused, so they can also be kept after the next call.
+     */
+    @Override
+    public CharSequence nextParagraphText() throws IOException {
+        return nextText();
+    }
+
+    /**
+     * The Tokens handed out by nextText are always complete, so they are kept as they are.
+     */
+    @Override
+    public CharSequence nextBoundedText() throws IOException {
+        return nextText();
+    }
+
+    /**
+     * Gives the byte offset of the next paragraph in the file.
+     */
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Continues reading from the paragraph at a byte offset, mapping a new window starting there if it is not in the current one.
+     * @param position the start of a paragraph, as returned by position
+     */
+    @Override
+    public void seek(long position) throws IOException {
+        if (position < window_start || position >= window_start + window.limit()) {
+            map(Math.min(position, size), WINDOW_SIZE);
+        }
+        this.position = position;
+    }
+
+    /**
+     * Makes sure the next bytes bytes of the file from position are in the mapped window, mapping a new window starting at position if they are not.
+     * @throws IOException if the file ends before them, or a single record is too long to be mapped at once
+     */
+    private void ensure(long bytes) throws IOException {
+        if (position + bytes > size) {
+            throw new IOException("Truncated tokens file at offset " + position);
+        }
+        if (position + bytes <= window_start + window.limit()) {
+            return;
+        }
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Paragraph too long to map at offset " + position);
+        }
+        map(position, Math.max(WINDOW_SIZE, bytes));
+    }
+
+    /**
+     * Maps length bytes of the file starting at start (or up to the end of the file if that is shorter).
+     */
+    private void map(long start, long length) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, size - start));
+        window_start = start;
+    }
+
+    /**
+     * Closes the file, the mapped windows are released once they are no longer used.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,219 @@
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ *
+ * A paragraph split into words for the line breakers, kept in primitive arrays instead of a list of Strings.
+ * spaces holds the index of every space in the paragraph in order, so the words are the text between them, and columns holds the column
+ * every character starts at (see DisplayWidth.columns), so the width of any part of the paragraph is a single subtraction.
+ * The spaces are found as the line breakers ask for them and are kept, so the text is only searched once and the end of a paragraph
+ * that fits on its last line is not searched at all. Paragraphs read from a tokens file (see TokenFile) are not searched at all.
+ * Tokens is also a CharSequence of the paragraph, so it can be handed out by a ParagraphSource wherever a paragraph is expected.
+ * Once complete has been called it no longer changes, and the same Tokens can then be split by several line breakers on different threads.
+ *
+ * @author Malak Sadek
+ *
+ */
+public final class Tokens implements CharSequence {
+
+    private static final int[] NONE = new int[0];
+
+    private final CharSequence text;
+    //text if it is a String, which is searched directly, and null otherwise
+    private final String string;
+    private final int length;
+    private final int[] columns;
+    private int[] spaces;
+    private int count;
+    //Every space before scanned is in spaces, the rest of the text has not been searched yet
+    private int scanned;
+
+    /**
+     * Constructor for a paragraph whose spaces are already known.
+     * @param text the paragraph
+     * @param spaces the indexes of all the spaces in text, in order
+     * @param count the number of entries of spaces that are used
+     * @param columns the column every character of text starts at and the width of text at the end, or null if text is ASCII
+     */
+    Tokens(CharSequence text, int[] spaces, int count, int[] columns) {
+        this.text = text;
+        this.string = null;
+        this.length = text.length();
+        this.spaces = spaces;
+        this.count = count;
+        this.columns = columns;
+        this.scanned = length;
+    }
+
+    /**
+     * Constructor for a paragraph that has not been searched for spaces yet.
+     */
+    private Tokens(CharSequence text) {
+        this.text = text;
+        this.string = text instanceof String ? (String) text : null;
+        this.length = text.length();
+        this.spaces = NONE;
+        this.columns = DisplayWidth.columns(text);
+    }
+
+    /**
+     * Splits a paragraph into words.
+     * @return Returns the words of text, or text itself if it has already been split.
+     */
+    static Tokens of(CharSequence text) {
+        return text instanceof Tokens ? (Tokens) text : new Tokens(text);
+    }
+
+    /**
+     * Splits every paragraph of an array into words and completes them, so that they can be shared between threads.
+     */
+    static Tokens[] of(CharSequence[] paragraphs) {
+        Tokens[] tokens = new Tokens[paragraphs.length];
+        for (int i = 0; i < paragraphs.length; i++) {
+            tokens[i] = of(paragraphs[i]).complete();
+        }
+        return tokens;
+    }
+
+    /**
+     * Finds every space of the paragraph that has not been found yet.
+     * @return Returns this, which no longer changes afterwards.
+     */
+    Tokens complete() {
+        while (scan()) {
+        }
+        return this;
+    }
+
+    /**
+     * Finds the next space after the ones found so far.
+     * @return Returns false if there are no more spaces, the paragraph has then been searched to the end.
+     */
+    private boolean scan() {
+        if (scanned == length) {
+            return false;
+        }
+        int index = string != null ? string.indexOf(' ', scanned) : indexOf(text, ' ', scanned);
+        if (index == -1) {
+            scanned = length;
+            return false;
+        }
+        if (count == spaces.length) {
+            //Words are usually a few characters long, so the array is rarely grown more than once
+            spaces = Arrays.copyOf(spaces, Math.max(count * 2, length / 6 + 1));
+        }
+        spaces[count++] = index;
+        scanned = index + 1;
+        return true;
+    }
+
+    /**
+     * Finds the index of the first occurrence of a character in text, starting the search at from.
+     * Searches the bytes or chars directly when the text is an ASCII view or a window of the input.
+     * Strings are searched with String.indexOf instead, as it is much faster than checking each character.
+     * @return Returns the index of the character, or -1 if it does not occur after from.
+     */
+    private static int indexOf(CharSequence text, char c, int from) {
+        if (text instanceof AsciiText) {
+            return ((AsciiText) text).indexOf(c, from);
+        }
+        if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+            //Searches the array that a window of the input is read into
+            CharBuffer chars = (CharBuffer) text;
+            char[] array = chars.array();
+            int base = chars.arrayOffset() + chars.position();
+            int length = chars.length();
+            for (int i = Math.max(from, 0); i < length; i++) {
+                if (array[base + i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        for (int i = Math.max(from, 0); i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Getter for the paragraph, which is what the line breakers hand to their LineSink so the output can copy it directly.
+     */
+    CharSequence text() {
+        return text;
+    }
+
+    /**
+     * Gives the number of spaces in the paragraph.
+     */
+    int spaceCount() {
+        complete();
+        return count;
+    }
+
+    /**
+     * Gives the index in the paragraph of a space that has been found by next.
+     * @param k the number of the space, counting from 0
+     * @return Returns the index, or -1 if the paragraph has k spaces or fewer.
+     */
+    int space(int k) {
+        return k < count ? spaces[k] : -1;
+    }
+
+    /**
+     * Finds the first space at or after index from. The line breakers search forward through the paragraph,
+     * so the search starts from the result of their last call instead of from the first space.
+     * @param k the number of a space to start the search from, such as the result of the last call, or 0
+     * @return Returns the number of the space (see space), or the number of spaces if there is none at or after from.
+     */
+    int next(int from, int k) {
+        while (k > 0 && spaces[k - 1] >= from) {
+            k--;
+        }
+        //The spaces after the ones found so far are only searched for when they are needed
+        for (;; k++) {
+            if (k == count && !scan()) {
+                return k;
+            }
+            if (spaces[k] >= from) {
+                return k;
+            }
+        }
+    }
+
+    /**
+     * Gives the number of columns the paragraph takes up from index start to index end.
+     */
+    int width(int start, int end) {
+        return columns == null ? end - start : columns[end] - columns[start];
+    }
+
+    /**
+     * Checks whether the paragraph is ASCII, which makes its width the same as its number of characters.
+     */
+    boolean isAscii() {
+        return columns == null;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
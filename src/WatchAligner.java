@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Keeps an output file aligned while its input file is being edited or appended to. The input is watched with a WatchService,
+ * and an index of the last run remembers a fingerprint of every paragraph together with where it starts in the input and
+ * where its aligned lines start in the output. After a change only the paragraphs between the unchanged ones at the start and
+ * at the end of the file are split again, and the output is patched from the first changed paragraph onwards, with the
+ * unchanged paragraphs after it moved inside the file instead of being aligned again. When the file has only grown
+ * (its old last bytes are still the same), only the new tail is read, starting from the last paragraph of the previous run
+ * which may have been incomplete.
+ * Paragraphs are found in the raw bytes, so charsets that do not encode new lines as single ASCII bytes (see
+ * MappedParagraphSource.isSupported) are aligned again in full after every change.
+ *
+ * @author Malak Sadek
+ *
+ */
+public class WatchAligner {
+
+    /**
+     * Time in milliseconds to wait for further events after a change, so a burst of writes leads to a single update.
+     */
+    public static final long SETTLE_MILLIS = 50;
+
+    /**
+     * Number of bytes at the end of the previous input that have to be unchanged for a bigger file to be treated as appended to.
+     */
+    public static final int TAIL_SIZE = 4096;
+
+    private static final int READ_SIZE = 1 << 16;
+
+    //Paragraph fingerprints are 64-bit FNV-1a hashes of their bytes
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Align align;
+    private Path input;
+    private Path output;
+    private Charset output_charset;
+
+    //The index of the last run: paragraph i starts at input_offsets[i] and its output at output_offsets[i],
+    //the entries at count are the end of the input and of the output
+    private int count;
+    private long[] hashes = new long[16];
+    private long[] input_offsets = new long[17];
+    private long[] output_offsets = new long[17];
+    private byte[] tail = new byte[0];
+
+    //The paragraphs found by the last scan, in the same form as the index
+    private int scanned;
+    private long[] scan_hashes = new long[16];
+    private long[] scan_offsets = new long[17];
+
+    /**
+     * Constructor.
+     * @param align the alignment object for the input file
+     * @param output_name the file the aligned text is kept in
+     */
+    WatchAligner(Align align, String output_name) {
+        this.align = align;
+        this.input = Paths.get(align.getFileName());
+        this.output = Paths.get(output_name);
+        //The output file is written in the input's charset, the same as '--output' without '--watch'
+        this.output_charset = align.getCharset();
+    }
+
+    /**
+     * Aligns the whole input file and then keeps the output up to date whenever the input changes, until the thread is interrupted.
+     */
+    void watch() throws IOException, InterruptedException {
+        System.out.println(update());
+        Path directory = input.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        //An overflow means events were lost, so the file may have changed
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || input.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                } while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                if (changed && Files.isRegularFile(input)) {
+                    System.out.println(update());
+                }
+            }
+        }
+    }
+
+    /**
+     * Brings the output up to date with the input.
+     * @return Returns a summary of how many paragraphs had to be aligned again.
+     */
+    String update() throws IOException {
+        if (!MappedParagraphSource.isSupported(align.getCharset())) {
+            return rewrite();
+        }
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+
+            //A file that has only grown is read from the start of its last paragraph, everything else is read from the start
+            int from = 0;
+            if (count > 0 && size > input_offsets[count] && sameTail(in)) {
+                from = count - 1;
+            }
+            scan(in, input_offsets[from], size);
+
+            //The paragraphs before from are unchanged, the scan may find more unchanged paragraphs at either end
+            int total = from + scanned;
+            int prefix = from;
+            while (prefix < count && prefix < total && hashes[prefix] == scan_hashes[prefix - from]) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < count - prefix && suffix < total - prefix
+                    && hashes[count - 1 - suffix] == scan_hashes[total - 1 - suffix - from]) {
+                suffix++;
+            }
+
+            //Aligns the changed paragraphs, recording where the output of each one starts. When nothing after them has to be kept
+            //they are written straight to the output file, otherwise they are collected in memory while the rest of the output is moved
+            long start = output_offsets[prefix];
+            long old_suffix_start = output_offsets[count - suffix];
+            long suffix_length = output_offsets[count] - old_suffix_start;
+            int changed = total - prefix - suffix;
+            long[] changed_offsets = new long[changed + 1];
+            OutputSink rendered = suffix_length == 0 ? new OutputSink(out.position(start), output_charset)
+                    : OutputSink.toMemory(output_charset, OutputSink.BUFFER_SIZE);
+            try {
+                for (int i = 0; i < changed; i++) {
+                    int scan_index = prefix + i - from;
+                    changed_offsets[i] = rendered.size();
+                    align.writeParagraph(readParagraph(in, scan_offsets[scan_index], scan_offsets[scan_index + 1]), rendered);
+                }
+                changed_offsets[changed] = rendered.size();
+                if (suffix_length == 0) {
+                    rendered.flush();
+                } else {
+                    //The unchanged paragraphs at the end are moved to follow the new middle, then the middle is written in front of them
+                    byte[] middle = rendered.toByteArray();
+                    move(out, old_suffix_start, start + middle.length, suffix_length);
+                    write(out, start, middle);
+                }
+            } catch (UncheckedIOException e) {
+                //The sink reports write errors unchecked
+                throw e.getCause();
+            }
+            long shift = start + changed_offsets[changed] - old_suffix_start;
+            out.truncate(start + changed_offsets[changed] + suffix_length);
+
+            //Updates the index with everything scanned, as a changed line terminator moves the input of paragraphs that are otherwise unchanged,
+            //while the output of the unchanged paragraphs at the end moves by shift
+            long[] suffix_outputs = Arrays.copyOfRange(output_offsets, count - suffix, count + 1);
+            ensureCapacity(total);
+            for (int i = from; i < total; i++) {
+                hashes[i] = scan_hashes[i - from];
+                input_offsets[i] = scan_offsets[i - from];
+            }
+            input_offsets[total] = size;
+            for (int i = 0; i <= changed; i++) {
+                output_offsets[prefix + i] = start + changed_offsets[i];
+            }
+            for (int i = 1; i <= suffix; i++) {
+                output_offsets[prefix + changed + i] = suffix_outputs[i] + shift;
+            }
+            count = total;
+            tail = read(in, Math.max(0, size - TAIL_SIZE), size);
+            return "Aligned " + changed + " of " + total + " paragraphs into " + output;
+        }
+    }
+
+    /**
+     * Aligns the whole file again and replaces the output, used for charsets that paragraphs cannot be found in as bytes.
+     */
+    private String rewrite() throws IOException {
+        String[] paragraphs = FileUtil.readParagraphs(input.toString(), align.getCharset());
+        byte[] result = align.render(paragraphs, 0, paragraphs.length, output_charset);
+        Files.write(output, result);
+        return "Aligned " + paragraphs.length + " of " + paragraphs.length + " paragraphs into " + output;
+    }
+
+    /**
+     * Checks whether the last bytes of the previous input are still the same.
+     */
+    private boolean sameTail(FileChannel in) throws IOException {
+        long end = input_offsets[count];
+        return Arrays.equals(tail, read(in, end - tail.length, end));
+    }
+
+    /**
+     * Finds the paragraphs of the input from start to end and records their fingerprints and offsets in the scan arrays.
+     * Paragraphs end at a '\n', a '\r' or a "\r\n", the same as BufferedReader.readLine, and a last paragraph without a line
+     * terminator counts as a paragraph too.
+     */
+    private void scan(FileChannel in, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+        scanned = 0;
+        long position = start;
+        long paragraph_start = start;
+        long hash = FNV_OFFSET;
+        boolean empty = true;
+        boolean after_cr = false;
+        in.position(start);
+        while (position < end && in.read(buffer) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining() && position < end) {
+                byte b = buffer.get();
+                position++;
+                if (after_cr && b == '\n') {
+                    //The '\n' of a "\r\n" belongs to the paragraph that the '\r' ended
+                    after_cr = false;
+                    paragraph_start = position;
+                    continue;
+                }
+                after_cr = b == '\r';
+                if (b == '\n' || b == '\r') {
+                    addScanned(hash, paragraph_start);
+                    paragraph_start = position;
+                    hash = FNV_OFFSET;
+                    empty = true;
+                } else {
+                    hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+                    empty = false;
+                }
+            }
+            buffer.clear();
+        }
+        if (!empty) {
+            addScanned(hash, paragraph_start);
+        }
+        scan_offsets[scanned] = end;
+    }
+
+    /**
+     * Adds a paragraph found by scan.
+     */
+    private void addScanned(long hash, long start) {
+        if (scanned == scan_hashes.length) {
+            scan_hashes = Arrays.copyOf(scan_hashes, scanned * 2);
+            scan_offsets = Arrays.copyOf(scan_offsets, scanned * 2 + 1);
+        }
+        scan_hashes[scanned] = hash;
+        scan_offsets[scanned++] = start;
+    }
+
+    /**
+     * Makes the index big enough for the given number of paragraphs.
+     */
+    private void ensureCapacity(int paragraphs) {
+        if (paragraphs >= hashes.length) {
+            int length = Math.max(paragraphs + 1, hashes.length * 2);
+            hashes = Arrays.copyOf(hashes, length);
+            input_offsets = Arrays.copyOf(input_offsets, length + 1);
+            output_offsets = Arrays.copyOf(output_offsets, length + 1);
+        }
+    }
+
+    /**
+     * Reads a paragraph of the input and decodes it, the line terminator at its end is left out.
+     */
+    private String readParagraph(FileChannel in, long start, long end) throws IOException {
+        byte[] bytes = read(in, start, end);
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\n') {
+            length--;
+        }
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, align.getCharset());
+    }
+
+    /**
+     * Reads the bytes from start to end of a file.
+     */
+    private static byte[] read(FileChannel in, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Writes bytes to a file at the given position.
+     */
+    private static void write(FileChannel out, long position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Moves length bytes of a file from one position to another, the ranges may overlap.
+     * The bytes are copied in blocks, starting from the end when they move towards the end of the file so nothing is overwritten before it is copied.
+     */
+    private static void move(FileChannel file, long from, long to, long length) throws IOException {
+        if (from == to || length == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, READ_SIZE));
+        long done = 0;
+        while (done < length) {
+            int block = (int) Math.min(buffer.capacity(), length - done);
+            long offset = to > from ? length - done - block : done;
+            buffer.clear().limit(block);
+            while (buffer.hasRemaining()) {
+                file.read(buffer, from + offset + buffer.position());
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                file.write(buffer, to + offset + buffer.position());
+            }
+            done += block;
+        }
+    }
+}